@@ -0,0 +1,125 @@
+package com.lucaf;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Class to bound the work of the computation requests running at the same time
+ * <p>
+ * Every request reserves its estimated cost from a global budget before it starts and gives it back when it completes.
+ * A request is rejected if it costs more than a single request is allowed to, or if the budget left is not enough,
+ * so the queues of {@link Config#scheduler} can not grow without limit.
+ */
+public class AdmissionController {
+
+    /**
+     * Total cost of the requests that can run at the same time
+     */
+    private final long budget;
+
+    /**
+     * Maximum cost of a single request
+     */
+    private final long maxCost;
+
+    /**
+     * Cost of the requests running
+     */
+    private long used = 0;
+
+    /**
+     * Lock of the cost used
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Number of requests rejected
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * Constructor to set the budget
+     *
+     * @param budget  total cost of the requests that can run at the same time
+     * @param maxCost maximum cost of a single request
+     * @throws IllegalArgumentException if the maximum cost of a request is not positive or larger than the budget
+     */
+    public AdmissionController(long budget, long maxCost) throws IllegalArgumentException {
+        if (maxCost <= 0 || maxCost > budget) {
+            throw new IllegalArgumentException("The maximum cost of a request must be positive and not larger than the budget");
+        }
+        this.budget = budget;
+        this.maxCost = maxCost;
+    }
+
+    /**
+     * Check if a request costs more than a single request is allowed to, counting it as rejected
+     *
+     * @param cost estimated cost of the request
+     * @return true if the request must be rejected whatever the load
+     */
+    public boolean isTooLarge(long cost) {
+        if (cost > maxCost) {
+            rejected.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reserve the cost of a request from the budget
+     *
+     * @param cost estimated cost of the request
+     * @return true if the request can start, false if it is rejected
+     */
+    public boolean tryAcquire(long cost) {
+        lock.lock();
+        try {
+            if (cost > maxCost || used + cost > budget) {
+                rejected.increment();
+                return false;
+            }
+            used += cost;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Give back the cost of a completed request
+     *
+     * @param cost cost reserved by the request
+     */
+    public void release(long cost) {
+        lock.lock();
+        try {
+            used -= cost;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the cost of the requests running
+     *
+     * @return cost used
+     */
+    public long getUsed() {
+        lock.lock();
+        try {
+            return used;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of requests rejected
+     *
+     * @return number of rejected requests
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+}
@@ -0,0 +1,26 @@
+package com.lucaf;
+
+/**
+ * Interface of a connection with a client, used by the {@link RequestDispatcher} to answer its requests
+ */
+public interface ClientConnection {
+
+    /**
+     * Method to send a message to the client, it can be called by any thread
+     *
+     * @param message message to send, without the line terminator
+     */
+    void sendMessage(String message);
+
+    /**
+     * Method to close the connection after the messages already sent
+     */
+    void closeConnection();
+
+    /**
+     * Method to get the address of the client for the logs
+     *
+     * @return address and port of the client
+     */
+    String getAddress();
+}
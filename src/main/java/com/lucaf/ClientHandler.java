@@ -1,29 +1,40 @@
 package com.lucaf;
 
-import com.lucaf.datatypes.ComputeRequest;
-import com.lucaf.datatypes.Request;
-import com.lucaf.datatypes.Response;
-import com.lucaf.datatypes.StatRequest;
-
 import java.io.*;
 import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Class for handling the communication with the client
+ * Class for handling the communication with the client, run by a platform or a virtual thread
  */
-public class ClientHandler extends Thread {
+public class ClientHandler implements Runnable, ClientConnection {
 
     /**
      * Socket to communicate with the client
      */
     private final Socket socket;
 
-    private final ExecutorService executorService;
+    private RequestDispatcher requestDispatcher;
     private BufferedWriter bufferedWriter;
     private BufferedReader bufferedReader;
 
+    /**
+     * Messages waiting to be written, added by the threads completing the requests
+     */
+    private final Queue<String> output = new ConcurrentLinkedQueue<>();
+
+    /**
+     * True while a writer thread is draining {@link #output}
+     */
+    private final AtomicBoolean writing = new AtomicBoolean(false);
+
+    /**
+     * True if the socket must be closed after writing the messages queued
+     */
+    private volatile boolean closing = false;
+
     /**
      * Constructor, sets the socket
      *
@@ -31,26 +42,80 @@ public class ClientHandler extends Thread {
      */
     public ClientHandler(Socket socket) {
         this.socket = socket;
-        this.executorService = Executors.newSingleThreadExecutor();
-
     }
 
     /**
-     * Method to send a message to the client through the socket
+     * Method to queue a message to send to the client, the message is dropped if the socket is closed
+     * The message is written by a virtual writer thread of the connection, so the thread completing the request never
+     * blocks on a client that does not read its socket
      *
      * @param message message to send
      */
-    private void sendMessage(String message) {
-        synchronized (bufferedWriter) {
+    @Override
+    public void sendMessage(String message) {
+        if (socket.isClosed()) {
+            return;
+        }
+        output.add(message);
+        startWriter();
+    }
+
+    /**
+     * Method to close the socket after the messages already queued, the loop of the thread then closes the streams
+     */
+    @Override
+    public void closeConnection() {
+        closing = true;
+        startWriter();
+    }
+
+    /**
+     * Start a writer thread draining the queued messages, unless one is already running
+     */
+    private void startWriter() {
+        if (writing.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("writer-" + getAddress()).start(this::drain);
+        }
+    }
+
+    /**
+     * Write the queued messages, then close the socket if the client asked so
+     * The writer stops when the queue is empty, a message queued meanwhile starts a new one
+     */
+    private void drain() {
+        do {
             try {
-                bufferedWriter.write(message);
-                bufferedWriter.newLine();
+                String message;
+                while ((message = output.poll()) != null) {
+                    bufferedWriter.write(message);
+                    bufferedWriter.newLine();
+                }
                 bufferedWriter.flush();
             } catch (IOException e) {
-                System.err.println("Failed to send message to " + socket.getInetAddress().getHostAddress() + ":" + socket.getPort());
+                System.err.println("Failed to send message to " + getAddress());
                 System.err.println(e.toString());
+                output.clear();
             }
-        }
+            if (closing) {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close TCP connection with " + getAddress());
+                    System.err.println(e.toString());
+                }
+            }
+            writing.set(false);
+        } while ((closing || !output.isEmpty()) && !socket.isClosed() && writing.compareAndSet(false, true));
+    }
+
+    /**
+     * Method to get the address of the client
+     *
+     * @return address and port of the client
+     */
+    @Override
+    public String getAddress() {
+        return socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
     }
 
     /**
@@ -61,7 +126,6 @@ public class ClientHandler extends Thread {
             System.out.println("TCP connection closed with " + socket.getInetAddress().getHostAddress() + ":" + socket.getPort());
             bufferedWriter.close();
             bufferedReader.close();
-            executorService.close();
         } catch (IOException e) {
             System.err.println("Failed to close TCP connection with " + socket.getInetAddress().getHostAddress() + ":" + socket.getPort());
             System.err.println(e.toString());
@@ -77,6 +141,7 @@ public class ClientHandler extends Thread {
             socket.setSoTimeout(1000 * 60 * 5);
             bufferedReader = new BufferedReader(new InputStreamReader(socket.getInputStream()));
             bufferedWriter = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream()));
+            requestDispatcher = new RequestDispatcher(this);
             System.out.println("TCP connection established with " + socket.getInetAddress().getHostAddress() + ":" + socket.getPort());
             while (true) {
                 try {
@@ -86,34 +151,18 @@ public class ClientHandler extends Thread {
                     }
                     String message = bufferedReader.readLine();
                     if (message == null) {
-                        continue;
-                    }
-                    long millis = System.currentTimeMillis();
-                    System.out.println("Received message from " + socket.getInetAddress().getHostAddress() + ":" + socket.getPort() + ": " + message);
-                    Request request = new Request(message);
-                    Request.RequestType requestType = request.getRequestType();
-                    if (requestType == null) {
-                        System.out.println("Unknown request type: " + message);
-                        Response response = new Response(new String[]{"(IllegalCommand) Unknown request type"});
-                        sendMessage(response.toString());
-                    } else if (requestType == Request.RequestType.QuitRequest) {
-                        Response response = new Response(true);
-                        sendMessage(response.toString());
-                        socket.close();
-                    } else if (requestType == Request.RequestType.ComputationRequest) {
-                        ComputeRequest computeRequest = request.getComputeRequest();
-                        Computation computation = new Computation(computeRequest);
-                        ComputationAsync computationAsync = getComputationAsync(computation, millis);
-                        executorService.submit(computationAsync);
-                    } else if (requestType == Request.RequestType.StatRequest) {
-                        StatRequest statRequest = request.getStatRequest();
-                        Stats stats = new Stats(statRequest);
-                        StatsAsync statsAsync = getStatsAsync(stats, millis);
-                        executorService.submit(statsAsync);
+                        close();
+                        break;
                     }
+                    requestDispatcher.dispatch(message);
                 } catch (IOException e) {
                     close();
                     break;
+                } catch (Throwable e) {
+                    System.err.println("Failed to handle a message from " + getAddress() + ", closing the connection");
+                    System.err.println(e.toString());
+                    close();
+                    break;
                 }
             }
         } catch (IOException e) {
@@ -123,52 +172,4 @@ public class ClientHandler extends Thread {
         }
 
     }
-
-    /**
-     * Method to get the computation async object from the request
-     *
-     * @param computation computation to run
-     * @param millis      system time in milliseconds when the request was received
-     * @return computation async object
-     */
-    private ComputationAsync getComputationAsync(Computation computation, long millis) {
-        return new ComputationAsync(computation, new ComputationListener() {
-            @Override
-            public void onComputationAsyncComplete(Response response) {
-                if (response.isOk()) {
-                    Stats.addRequest(response.getTime());
-                }
-                sendMessage(response.toString());
-            }
-
-            @Override
-            public void onComputationAsyncError(Exception e) {
-                Response response = new Response(new String[]{"(Exception) " + e.toString()});
-                sendMessage(response.toString());
-            }
-        });
-    }
-
-    /**
-     * Method to get the stats async object from the request
-     *
-     * @param stats  stats to run
-     * @param millis system time in milliseconds when the request was received
-     * @return stats async object@
-     */
-    private StatsAsync getStatsAsync(Stats stats, long millis) {
-        return new StatsAsync(stats, new StatsListener() {
-            @Override
-            public void onStatsAsyncComplete(Response response) {
-                response.setTime(System.currentTimeMillis() - millis);
-                sendMessage(response.toString());
-            }
-
-            @Override
-            public void onStatsAsyncError(Exception e) {
-                Response response = new Response(new String[]{"(Exception) " + e.toString()});
-                sendMessage(response.toString());
-            }
-        });
-    }
 }
@@ -2,7 +2,19 @@ package com.lucaf;
 
 import com.lucaf.datatypes.ComputeRequest;
 import com.lucaf.datatypes.Response;
-import com.lucaf.evaluator.Parser;
+import com.lucaf.evaluator.Accumulator;
+import com.lucaf.evaluator.EvaluationTask;
+import com.lucaf.evaluator.Evaluator;
+import com.lucaf.evaluator.ExpressionTooDeepException;
+import com.lucaf.evaluator.GridEvaluator;
+import com.lucaf.evaluator.IntervalSearch;
+import com.lucaf.evaluator.ListEvaluator;
+import com.lucaf.evaluator.MonotonicityAnalyzer;
+import com.lucaf.evaluator.Node;
+import com.lucaf.evaluator.ParsedExpression;
+import com.lucaf.evaluator.Program;
+import com.lucaf.evaluator.ProgramBuilder;
+import com.lucaf.evaluator.SeparableAnalyzer;
 
 import java.util.*;
 import java.util.concurrent.Callable;
@@ -27,14 +39,14 @@ public class Computation implements Callable<Response> {
     }
 
     /**
-     * List of all the possible combinations of values of the variables
+     * Aggregate of the results of the computation for each combination of values and expression
      */
-    private List<Map<String, Double>> values;
+    private Accumulator accumulator = new Accumulator();
 
     /**
-     * List of all the results of the computation for each combination of values and expression
+     * Roots of the optimized trees of the expressions
      */
-    private List<Double> results;
+    private final List<Node> roots = new ArrayList<>();
 
     /**
      * Call method to run the computation
@@ -44,129 +56,392 @@ public class Computation implements Callable<Response> {
      */
     @Override
     public Response call() throws Exception {
-        long startTime = System.currentTimeMillis();
+        long startTime = System.nanoTime();
         if (!computeRequest.getErrorMessage().isEmpty()) {
             return new Response(new String[]{computeRequest.getErrorMessage()});
         }
-        if (!setAllPossibleValues()) {
+        boolean isGrid = computeRequest.getValueKind() == ComputeRequest.ValuesKind.GRID;
+        if (!isGrid && !checkListSizes()) {
             return new Response(new String[]{computeRequest.getErrorMessage()});
         }
         if (computeRequest.getComputationKind() == ComputeRequest.ComputationKind.COUNT) {
-            Response response = new Response(values.size());
-            response.setTime(System.currentTimeMillis() - startTime);
+            Response response = new Response(isGrid ? getGridSize() : computeRequest.getVariableValuesFunctions().get(0).getSize());
+            response.setTime(System.nanoTime() - startTime);
             return response;
         }
-        if (!computeExpressions()) {
+        String key = Config.resultCache == null ? null : computeRequest.getCanonicalKey();
+        if (key != null) {
+            Double cached = Config.resultCache.get(key);
+            if (cached != null) {
+                Response response = new Response(cached);
+                response.setTime(System.nanoTime() - startTime);
+                response.setCacheHit(true);
+                return response;
+            }
+        }
+        Program program = compileExpressions();
+        if (program == null) {
             return new Response(new String[]{computeRequest.getErrorMessage()});
         }
+        ComputeRequest.ComputationKind kind = computeRequest.getComputationKind();
+        boolean monotone = kind != ComputeRequest.ComputationKind.AVG && Config.monotonicityAnalysis && corners(program, isGrid, kind == ComputeRequest.ComputationKind.MAX);
+        if (!monotone && !isGrid) {
+            accumulator = evaluateTiles(new ListEvaluator(program, getLowers(), getSteps(), getSizes()[0]), false, 0);
+        } else if (!monotone && (!Config.separableAnalysis || !analyze())) {
+            GridEvaluator gridEvaluator = new GridEvaluator(program, getLowers(), getSteps(), getSizes());
+            if (Config.intervalSearch && kind != ComputeRequest.ComputationKind.AVG) {
+                search(gridEvaluator, kind == ComputeRequest.ComputationKind.MAX);
+            } else {
+                accumulator = evaluateTiles(gridEvaluator, true, gridEvaluator.getOuterSlot());
+            }
+        }
         if (computeRequest.getComputationKind() == ComputeRequest.ComputationKind.MAX) {
-            Response response = new Response(results.stream().mapToDouble(Double::doubleValue).max().orElse(0));
-            response.setTime(System.currentTimeMillis() - startTime);
-            return response;
+            return respond(key, accumulator.getMax(), startTime);
         } else if (computeRequest.getComputationKind() == ComputeRequest.ComputationKind.MIN) {
-            Response response = new Response(results.stream().mapToDouble(Double::doubleValue).min().orElse(0));
-            response.setTime(System.currentTimeMillis() - startTime);
-            return response;
+            return respond(key, accumulator.getMin(), startTime);
         } else if (computeRequest.getComputationKind() == ComputeRequest.ComputationKind.AVG) {
-            Response response = new Response(results.stream().mapToDouble(Double::doubleValue).average().orElse(0));
-            response.setTime(System.currentTimeMillis() - startTime);
-            return response;
+            return respond(key, accumulator.getAvg(), startTime);
         }
 
         return new Response(new String[]{"(IllegalArgument) Unknown computation kind"});
     }
 
     /**
-     * Compute the expressions for all the possible values of the variables
-     * and store the results in the results list
+     * Estimate the work of the request before running it, as the number of points times the number of nodes of the
+     * expressions
+     * The nodes are counted from the operators in the text, every binary operator adding itself and an operand, so the
+     * estimate costs a single pass over the expressions and can run on the thread reading the messages; the expressions
+     * are parsed only when the request runs. It is an upper bound: the optimizer removes nodes, and the analyses of MIN
+     * and MAX requests and of separable expressions skip most of the points
+     *
+     * @return work units, 1 for the requests not evaluating expressions, Long.MAX_VALUE if the product overflows
+     */
+    public long estimateCost() {
+        if (!computeRequest.getErrorMessage().isEmpty() || computeRequest.getComputationKind() == ComputeRequest.ComputationKind.COUNT) {
+            return 1;
+        }
+        long nodes = 0;
+        for (String expression : computeRequest.getExpressions()) {
+            nodes++;
+            for (int i = 0; i < expression.length(); i++) {
+                if ("+-*/^".indexOf(expression.charAt(i)) >= 0) {
+                    nodes += 2;
+                }
+            }
+        }
+        long points = 1;
+        if (computeRequest.getValueKind() == ComputeRequest.ValuesKind.GRID) {
+            for (int size : getSizes()) {
+                points = size != 0 && points > Long.MAX_VALUE / size ? Long.MAX_VALUE : points * size;
+            }
+        } else {
+            points = Arrays.stream(getSizes()).max().orElse(0);
+        }
+        nodes = Math.max(nodes, 1);
+        return points > Long.MAX_VALUE / nodes ? Long.MAX_VALUE : points * nodes;
+    }
+
+    /**
+     * Build the response of a result, storing the result in {@link Config#resultCache} if it is enabled
+     *
+     * @param key       canonical key of the request, null if the result cache is disabled
+     * @param result    result of the computation
+     * @param startTime system time in nanoseconds when the computation started
+     * @return Response with the result
      */
-    private boolean computeExpressions() {
+    private Response respond(String key, double result, long startTime) {
+        if (key != null) {
+            Config.resultCache.put(key, result);
+        }
+        Response response = new Response(result);
+        response.setTime(System.nanoTime() - startTime);
+        return response;
+    }
+
+    /**
+     * Compile all the expressions into a single program, so their common subterms are evaluated once per point
+     * The expressions are parsed once and then taken from {@link Config#expressionCache}, and their nodes before and
+     * after the optimization are added to the {@link Stats} of every request using them
+     *
+     * @return compiled program, or null if an expression is not valid
+     */
+    private Program compileExpressions() {
+        List<String> variableNames = getVariableNames();
+        ParsedExpression parsedExpression = null;
+        long parsedNodes = 0;
+        long optimizedNodes = 0;
         for (String expression : computeRequest.getExpressions()) {
-            Parser parser = new Parser(expression);
             try {
-                parser.initialize();
+                parsedExpression = Config.expressionCache.get(ParsedExpression.key(expression, variableNames),
+                        key -> ParsedExpression.parse(expression, variableNames));
+                roots.add(parsedExpression.getRoot());
+                parsedNodes += parsedExpression.getParsedNodeCount();
+                optimizedNodes += parsedExpression.getOptimizedNodeCount();
+            }catch (ExpressionTooDeepException e){
+                computeRequest.setErrorMessage("(InvalidExpression) The expression is nested too deeply");
+                return null;
             }catch (IllegalArgumentException e){
                 computeRequest.setErrorMessage("(InvalidExpression) The expression is not in a valid format");
-                return false;
+                return null;
             }catch (IllegalStateException e){
                 computeRequest.setErrorMessage("(InvalidExpression) The expression is empty");
-                return false;
-            }
-            for (Map<String, Double> point : values) {
-                parser.setVariables(point);
-                try {
-                    Double result = parser.evaluate();
-                    if (!result.isNaN() && !result.isInfinite()) {
-                        results.add(result);
-                    }
-                }catch (IllegalStateException e){
-                    computeRequest.setErrorMessage("(InvalidExpression) The expression has not been initialized");
-                    return false;
-                }
+                return null;
             }
         }
-        return true;
+        Stats.addNodes(parsedNodes, optimizedNodes);
+        if (roots.size() == 1) {
+            return parsedExpression.getProgram();
+        }
+        ProgramBuilder programBuilder = new ProgramBuilder(variableNames);
+        for (Node root : roots) {
+            programBuilder.addExpression(root);
+        }
+        return programBuilder.build();
     }
 
     /**
-     * Set all the possible values of the variables
+     * Compute the expressions for all the points of the request
+     * For a grid, subterms depending only on outer variables are computed once per value of those variables,
+     * and the variables not used by any expression only weigh the results.
+     * Large requests are compiled, in blocks of points with the Vector API when available,
+     * and split in ranges of points evaluated in parallel by {@link Config#forkJoinPool}
      *
-     * @return true if the values are set correctly, false if an error occurs
+     * @param evaluator evaluator of the compiled expressions
+     * @return aggregate of the results
      */
-    private boolean setAllPossibleValues() {
-        int[] indexes = new int[computeRequest.getVariableValuesFunctions().size()];
-        values = new ArrayList<>();
-        results = new ArrayList<>();
-        if (computeRequest.getValueKind() == ComputeRequest.ValuesKind.GRID) {
-            boolean isAvailable = true;
-            while (isAvailable) {
-                Map<String, Double> variables = new HashMap<>();
-                for (int i = 0; i < indexes.length; i++) {
-                    variables.put(
-                            computeRequest.getVariableValuesFunctions().get(i).getVariable(),
-                            computeRequest.getVariableValuesFunctions().get(i).getLower() + indexes[i] * computeRequest.getVariableValuesFunctions().get(i).getStep()
-                    );
+    private Accumulator evaluate(Evaluator evaluator) {
+        prepare(evaluator);
+        return EvaluationTask.evaluate(evaluator, Config.splitThreshold, Config.forkJoinPool);
+    }
+
+    /**
+     * Compile the expressions of a large request, in blocks of points with the Vector API when available
+     *
+     * @param evaluator evaluator of the compiled expressions
+     */
+    private void prepare(Evaluator evaluator) {
+        if (evaluator.getPointCount() >= Config.compileThreshold && !(Config.vectorize && evaluator.vectorize())) {
+            evaluator.compile();
+        }
+    }
+
+    /**
+     * Compute the expressions for all the points of the request, reusing the partial results of the tiles computed
+     * by previous requests with the same expressions and the same lattice of values
+     * The points are split in tiles of whole rows of the outermost variable, so a request extending the range of
+     * that variable, or another slice of it, shares its first tiles with the previous requests. Only the full tiles
+     * are stored in {@link Config#tileCache}, the last partial tile is always computed.
+     * The tiles are also the chunks of a large request: after computing a tile the worker runs the small requests
+     * waiting in {@link Config#scheduler}, so they do not wait for the whole request.
+     *
+     * @param evaluator evaluator of the compiled expressions
+     * @param isGrid    true if the values are a grid, false if they are a list
+     * @param outerSlot slot of the outermost enumerated variable of a grid, -1 if no variable is enumerated
+     * @return aggregate of the results
+     */
+    private Accumulator evaluateTiles(Evaluator evaluator, boolean isGrid, int outerSlot) {
+        if ((Config.tileCache == null && Config.scheduler == null) || outerSlot < 0) {
+            return evaluate(evaluator);
+        }
+        long points = evaluator.getPointCount();
+        long rowPoints = isGrid ? points / getSizes()[outerSlot] : 1;
+        long tilePoints = Math.max(1, Config.tilePoints / rowPoints) * rowPoints;
+        long tiles = points / tilePoints;
+        if (tiles == 0) {
+            return evaluate(evaluator);
+        }
+        String prefix = Config.tileCache == null ? null : getTilePrefix(isGrid, outerSlot);
+        Accumulator result = new Accumulator();
+        boolean prepared = false;
+        for (long tile = 0; tile < tiles; tile++) {
+            Accumulator partial = prefix == null ? null : Config.tileCache.get(prefix, tile);
+            if (partial == null) {
+                if (!prepared) {
+                    prepare(evaluator);
+                    prepared = true;
                 }
-                values.add(variables);
-                indexes[indexes.length - 1]++;
-                for (int i = indexes.length - 1; i >= 0; i--) {
-                    if (indexes[i] >= (computeRequest.getVariableValuesFunctions().get(i)).getSize()) {
-                        if (i == 0) {
-                            isAvailable = false;
-                            break;
-                        }
-                        indexes[i] = 0;
-                        indexes[i - 1]++;
-                    }
+                partial = EvaluationTask.evaluate(evaluator, tile * tilePoints, (tile + 1) * tilePoints, Config.splitThreshold, Config.forkJoinPool);
+                if (prefix != null) {
+                    Config.tileCache.put(prefix, tile, partial);
+                }
+                if (Config.scheduler != null) {
+                    Config.scheduler.runWaiting(Config.tilePoints);
                 }
             }
-        } else {
-            int[] sizes = new int[computeRequest.getVariableValuesFunctions().size()];
-            for (int i = 0; i < sizes.length; i++) {
-                sizes[i] = computeRequest.getVariableValuesFunctions().get(i).getSize();
+            result.merge(partial);
+        }
+        if (tiles * tilePoints < points) {
+            if (!prepared) {
+                prepare(evaluator);
             }
-            boolean allSizesEqual = true;
-            for (int i = 1; i < sizes.length; i++) {
-                if (sizes[i] != sizes[i - 1]) {
-                    allSizesEqual = false;
-                    break;
-                }
+            result.merge(EvaluationTask.evaluate(evaluator, tiles * tilePoints, points, Config.splitThreshold, Config.forkJoinPool));
+        }
+        return result;
+    }
+
+    /**
+     * Get the description of the expressions and of the lattice of values of the request, shared by the requests
+     * whose tiles have the same results
+     * It contains the lower bound and the step of every variable, and for a grid the size of every variable but the
+     * outermost one, whose rows are split in tiles
+     *
+     * @param isGrid    true if the values are a grid, false if they are a list
+     * @param outerSlot slot of the outermost enumerated variable of a grid
+     * @return prefix of the keys of the tiles
+     */
+    private String getTilePrefix(boolean isGrid, int outerSlot) {
+        StringBuilder prefix = new StringBuilder(computeRequest.getValueKind().toString());
+        List<ComputeRequest.VariableValuesFunction> functions = computeRequest.getVariableValuesFunctions();
+        for (int i = 0; i < functions.size(); i++) {
+            ComputeRequest.VariableValuesFunction function = functions.get(i);
+            prefix.append(i == 0 ? ';' : ',').append(function.getVariable()).append(':')
+                    .append(function.getLower()).append(':').append(function.getStep());
+            if (isGrid && i != outerSlot) {
+                prefix.append(':').append(function.getSize());
             }
-            if (!allSizesEqual) {
+        }
+        for (String expression : computeRequest.getExpressions()) {
+            prefix.append(';').append(expression);
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Aggregate the expressions per dimension when they are sums, differences or products of subterms with
+     * disjoint variables, the subterms are enumerated only over the dimensions of their variables
+     *
+     * @return true if all the expressions are separable and the accumulator has been set
+     */
+    private boolean analyze() {
+        SeparableAnalyzer analyzer = new SeparableAnalyzer(getVariableNames(), getLowers(), getSteps(), getSizes(), this::evaluate);
+        Accumulator result = analyzer.analyze(roots);
+        if (result == null) {
+            return false;
+        }
+        accumulator = result;
+        return true;
+    }
+
+    /**
+     * Find the minimum or the maximum of the expressions from the corners of the grid or the ends of the list,
+     * when every expression is provably monotone in every variable
+     *
+     * @param program compiled expressions
+     * @param isGrid  true if the values are a grid, false if they are a list
+     * @param maximum true to find the maximum, false to find the minimum
+     * @return true if the expressions are monotone and the accumulator has been set
+     */
+    private boolean corners(Program program, boolean isGrid, boolean maximum) {
+        MonotonicityAnalyzer analyzer = new MonotonicityAnalyzer(program, getLowers(), getSteps(), getSizes());
+        Accumulator result = isGrid ? analyzer.extremeOfGrid(maximum) : analyzer.extremeOfList(maximum, getSizes()[0]);
+        if (result == null) {
+            return false;
+        }
+        accumulator = result;
+        return true;
+    }
+
+    /**
+     * Search the minimum or the maximum of the expressions over the grid, skipping the boxes of points whose
+     * interval bounds can not beat the best result found so far
+     * The boxes left are evaluated in batches of up to a tile of points, in parallel by {@link Config#forkJoinPool},
+     * and after every tile of points the worker runs the small requests waiting in {@link Config#scheduler}, like
+     * {@link #evaluateTiles}
+     *
+     * @param gridEvaluator evaluator of the compiled expressions
+     * @param maximum       true to search the maximum, false to search the minimum
+     */
+    private void search(GridEvaluator gridEvaluator, boolean maximum) {
+        if (gridEvaluator.getPointCount() >= Config.compileThreshold) {
+            gridEvaluator.compile();
+        }
+        Runnable betweenChunks = Config.scheduler == null ? null : () -> Config.scheduler.runWaiting(Config.tilePoints);
+        accumulator = new IntervalSearch(gridEvaluator, maximum, Config.splitThreshold, Config.forkJoinPool,
+                Config.tilePoints, betweenChunks).search();
+    }
+
+    /**
+     * Get the name of each variable
+     *
+     * @return names in slot order
+     */
+    private List<String> getVariableNames() {
+        List<String> variableNames = new ArrayList<>();
+        for (ComputeRequest.VariableValuesFunction variableValuesFunction : computeRequest.getVariableValuesFunctions()) {
+            variableNames.add(variableValuesFunction.getVariable());
+        }
+        return variableNames;
+    }
+
+    /**
+     * Get the lower bound of each variable
+     *
+     * @return lower bounds in slot order
+     */
+    private double[] getLowers() {
+        List<ComputeRequest.VariableValuesFunction> functions = computeRequest.getVariableValuesFunctions();
+        double[] lowers = new double[functions.size()];
+        for (int i = 0; i < lowers.length; i++) {
+            lowers[i] = functions.get(i).getLower();
+        }
+        return lowers;
+    }
+
+    /**
+     * Get the step of each variable
+     *
+     * @return steps in slot order
+     */
+    private double[] getSteps() {
+        List<ComputeRequest.VariableValuesFunction> functions = computeRequest.getVariableValuesFunctions();
+        double[] steps = new double[functions.size()];
+        for (int i = 0; i < steps.length; i++) {
+            steps[i] = functions.get(i).getStep();
+        }
+        return steps;
+    }
+
+    /**
+     * Get the number of values of each variable
+     *
+     * @return sizes in slot order
+     */
+    private int[] getSizes() {
+        List<ComputeRequest.VariableValuesFunction> functions = computeRequest.getVariableValuesFunctions();
+        int[] sizes = new int[functions.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = functions.get(i).getSize();
+        }
+        return sizes;
+    }
+
+    /**
+     * Get the number of points of the grid
+     *
+     * @return product of the sizes of the variables
+     * @throws ArithmeticException if the number of points overflows a long
+     */
+    private long getGridSize() throws ArithmeticException {
+        long size = 1;
+        for (ComputeRequest.VariableValuesFunction variableValuesFunction : computeRequest.getVariableValuesFunctions()) {
+            size = Math.multiplyExact(size, variableValuesFunction.getSize());
+        }
+        return size;
+    }
+
+    /**
+     * Check that all the variables of a LIST request have the same number of values
+     *
+     * @return true if the sizes are equal, false if an error occurs
+     */
+    private boolean checkListSizes() {
+        int[] sizes = getSizes();
+        for (int i = 1; i < sizes.length; i++) {
+            if (sizes[i] != sizes[i - 1]) {
                 computeRequest.setErrorMessage("(IllegalArgument) The range of the variables must have the same size");
                 return false;
             }
-            for (int i = 0; i < sizes[0]; i++) {
-                Map<String, Double> variables = new HashMap<>();
-                for (int j = 0; j < computeRequest.getVariableValuesFunctions().size(); j++) {
-                    variables.put(
-                            computeRequest.getVariableValuesFunctions().get(j).getVariable(),
-                            computeRequest.getVariableValuesFunctions().get(j).getLower() + i * computeRequest.getVariableValuesFunctions().get(j).getStep()
-                    );
-                }
-                values.add(variables);
-            }
         }
         return true;
     }
-}
\ No newline at end of file
+}
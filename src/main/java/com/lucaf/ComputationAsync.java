@@ -3,18 +3,32 @@ package com.lucaf;
 import com.lucaf.datatypes.Response;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 /**
  * Class to handle the computation requests asynchronously
+ * The events are notified by the thread completing the computation, no thread waits for it
  */
-public class ComputationAsync implements Runnable{
+public class ComputationAsync {
 
     /**
      * Computation to run
      */
     private final Callable<Response> computation;
 
+    /**
+     * Canonical key of the request, null to run the computation even if an identical one is running
+     */
+    private final String key;
+
+    /**
+     * Executor running the computation
+     */
+    private final Executor executor;
+
     /**
      * Events of the computation
      */
@@ -26,22 +40,59 @@ public class ComputationAsync implements Runnable{
      * @param computationListener events of the computation
      */
     public ComputationAsync(Callable<Response> computation, ComputationListener computationListener) {
+        this(computation, null, computationListener);
+    }
+
+    /**
+     * Constructor to set the computation, its key and the events
+     * @param computation computation to run
+     * @param key canonical key of the request, the computation is shared with the running ones with the same key
+     * @param computationListener events of the computation
+     */
+    public ComputationAsync(Callable<Response> computation, String key, ComputationListener computationListener) {
+        this(computation, key, Config.scheduler, computationListener);
+    }
+
+    /**
+     * Constructor to set the computation, its key, the executor running it and the events
+     * @param computation computation to run
+     * @param key canonical key of the request, the computation is shared with the running ones with the same key
+     * @param executor executor running the computation
+     * @param computationListener events of the computation
+     */
+    public ComputationAsync(Callable<Response> computation, String key, Executor executor, ComputationListener computationListener) {
         this.computation = computation;
+        this.key = key;
+        this.executor = executor;
         this.computationListener = computationListener;
     }
 
     /**
-     * Run the computation and notify the events
+     * Start the computation on the executor and notify the events when it completes
+     *
+     * @return future completed after the events have been notified
      */
-    @Override
-    public void run() {
-        Response response = null;
-        try {
-            Future<Response> future = Config.executorService.submit(computation);
-            response = future.get();
-            computationListener.onComputationAsyncComplete(response);
-        } catch (Exception e) {
-            computationListener.onComputationAsyncError(e);
+    public CompletableFuture<Void> start() {
+        CompletableFuture<Response> future;
+        if (key == null || Config.inFlightComputations == null) {
+            future = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return computation.call();
+                } catch (Exception e) {
+                    throw new CompletionException(e);
+                }
+            }, executor);
+        } else {
+            future = Config.inFlightComputations.submit(key, computation, executor);
         }
+        return future.handle((response, e) -> {
+            if (e == null) {
+                computationListener.onComputationAsyncComplete(response);
+            } else {
+                Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                computationListener.onComputationAsyncError(new ExecutionException(cause));
+            }
+            return null;
+        });
     }
 }
@@ -1,6 +1,14 @@
 package com.lucaf;
 
-import java.util.concurrent.ExecutorService;
+import com.lucaf.cache.ResultCache;
+import com.lucaf.cache.SegmentedLruCache;
+import com.lucaf.cache.SingleFlight;
+import com.lucaf.cache.TileCache;
+import com.lucaf.datatypes.Response;
+import com.lucaf.evaluator.Accumulator;
+import com.lucaf.evaluator.ParsedExpression;
+
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Class to store the configuration of the server
@@ -13,9 +21,113 @@ public class Config {
     public static int port = 9000;
 
     /**
-     * Executor with at most n computation for processing computation requests at the same time, with n being equal to the number of available processors on the machine where the server is running.
+     * Server mode: threads for a thread per connection, virtual for a virtual thread per connection, nio for {@link #eventLoops} threads handling all the connections
+     */
+    public static String serverMode = "threads";
+
+    /**
+     * Number of event loop threads of the nio server mode
+     */
+    public static int eventLoops = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+    /**
+     * Number of significant decimal digits kept by the histogram of the times of the requests, from 1 to 5, higher
+     * values use more memory (2 digits use about 60 KB, 3 digits about 450 KB)
+     */
+    public static int latencyPrecision = 2;
+
+    /**
+     * Waiting time in milliseconds that a queued request is moved back for every doubling of its cost when
+     * {@link #scheduler} chooses between the requests of a client
+     */
+    public static long schedulerAgingMillis = 1000;
+
+    /**
+     * Scheduler running the requests of all the clients on as many workers as the available processors, sharing them
+     * fairly between the clients and running the cheap requests first, declared after its settings so they are set
+     * when it is created
+     */
+    public static FairScheduler scheduler = new FairScheduler(Runtime.getRuntime().availableProcessors(), schedulerAgingMillis);
+
+    /**
+     * Maximum estimated cost of a single computation request, in points times nodes of the expressions, larger
+     * requests are rejected
+     */
+    public static long maxRequestCost = 100_000_000_000L;
+
+    /**
+     * Admission of the computation requests, with a budget of 4 requests of {@link #maxRequestCost} per processor
+     * running or queued at the same time, null to accept every request
+     */
+    public static AdmissionController admissionController = new AdmissionController(
+            maxRequestCost * 4 * Runtime.getRuntime().availableProcessors(), maxRequestCost);
+
+    /**
+     * Number of points of a request from which the expressions are compiled into generated classes instead of being interpreted
+     */
+    public static long compileThreshold = 100_000;
+
+    /**
+     * True to evaluate the requests compiled by {@link #compileThreshold} in blocks of points with the Vector API,
+     * it is used only if the server is started with --add-modules jdk.incubator.vector
+     */
+    public static boolean vectorize = true;
+
+    /**
+     * Pool splitting the points of a single request across all the available processors, null to evaluate each request on a single thread
+     */
+    public static ForkJoinPool forkJoinPool = null;
+
+    /**
+     * Maximum number of points evaluated by a single task, larger ranges of points are split in halves
+     */
+    public static long splitThreshold = 1 << 16;
+
+    /**
+     * True to answer MIN_GRID and MAX_GRID requests with an interval branch and bound search, which gives the same
+     * result of the evaluation of every point
+     */
+    public static boolean intervalSearch = true;
+
+    /**
+     * True to answer MIN and MAX requests from the ends of the ranges when the expressions are provably monotone in
+     * every variable
+     */
+    public static boolean monotonicityAnalysis = true;
+
+    /**
+     * True to aggregate GRID requests whose expressions are sums, differences or products of subterms with disjoint
+     * variables per dimension, instead of enumerating the whole grid
+     */
+    public static boolean separableAnalysis = true;
+
+    /**
+     * Parsed expressions shared by all the connections, keyed by {@link ParsedExpression#key}
+     */
+    public static SegmentedLruCache<String, ParsedExpression> expressionCache = new SegmentedLruCache<>(4096);
+
+    /**
+     * Results of the computations keyed by the canonical form of their requests, null to compute every request
+     */
+    public static ResultCache resultCache = null;
+
+    /**
+     * Computations running, keyed by the canonical form of their requests: an identical request received while one is
+     * running waits for its result instead of being computed again, null to compute every request
+     */
+    public static SingleFlight<String, Response> inFlightComputations = new SingleFlight<>();
+
+    /**
+     * Partial results of the tiles of the requests evaluating every point, reused by the requests over the same
+     * expressions and lattice of values, with the memory budget given to {@link Main}, null to compute every tile
+     */
+    public static TileCache<Accumulator> tileCache = null;
+
+    /**
+     * Number of points of a tile of {@link #tileCache}, rounded to whole rows of the outermost variable
+     * Between two tiles the worker runs the requests waiting in {@link #scheduler} costing less than a tile
      */
-    public static ExecutorService executorService = null;
+    public static long tilePoints = 1 << 20;
 
 
 
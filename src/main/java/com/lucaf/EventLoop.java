@@ -0,0 +1,122 @@
+package com.lucaf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Thread reading and writing a set of {@link NIOConnection} with a selector
+ * <p>
+ * Only this thread touches the selector and the channels: the other threads add the new connections and the
+ * connections with messages to send to queues, and wake up the selector.
+ */
+public class EventLoop extends Thread {
+
+    /**
+     * Size of the buffer used to read from the channels
+     */
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum time in milliseconds the selector waits, so the idle connections are checked regularly
+     */
+    private static final long SELECT_TIMEOUT = 1000;
+
+    /**
+     * Selector of the connections
+     */
+    private final Selector selector;
+
+    /**
+     * Buffer shared by the reads of all the connections, a connection copies only the bytes of an incomplete line
+     */
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+    /**
+     * Connections to register in the selector
+     */
+    private final Queue<NIOConnection> registrations = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Connections with messages to send or to close
+     */
+    private final Queue<NIOConnection> flushes = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Constructor, opens the selector
+     *
+     * @param index index of the event loop, used in the name of the thread
+     * @throws IOException if the selector can not be opened
+     */
+    public EventLoop(int index) throws IOException {
+        super("event-loop-" + index);
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Add a new connection to the event loop
+     *
+     * @param connection connection to handle
+     */
+    public void register(NIOConnection connection) {
+        registrations.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Ask the event loop to send the messages queued by a connection, or to close it
+     *
+     * @param connection connection to flush
+     */
+    public void flush(NIOConnection connection) {
+        flushes.add(connection);
+        selector.wakeup();
+    }
+
+    /**
+     * Run method of the event loop
+     */
+    @Override
+    public void run() {
+        long lastIdleCheck = System.currentTimeMillis();
+        while (true) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+            } catch (IOException e) {
+                System.err.println("Failed to select the connections of " + getName());
+                System.err.println(e.toString());
+                continue;
+            }
+            NIOConnection connection;
+            while ((connection = registrations.poll()) != null) {
+                connection.register(selector);
+            }
+            while ((connection = flushes.poll()) != null) {
+                connection.write();
+            }
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                connection = (NIOConnection) key.attachment();
+                if (key.isValid() && key.isReadable()) {
+                    connection.read(readBuffer);
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.write();
+                }
+            }
+            long now = System.currentTimeMillis();
+            if (now - lastIdleCheck >= SELECT_TIMEOUT) {
+                lastIdleCheck = now;
+                for (SelectionKey key : selector.keys()) {
+                    ((NIOConnection) key.attachment()).closeIfIdle(now);
+                }
+            }
+        }
+    }
+}
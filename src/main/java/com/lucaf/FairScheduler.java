@@ -0,0 +1,356 @@
+package com.lucaf;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Scheduler of the requests of all the clients on a fixed number of worker threads, replacing a FIFO thread pool
+ * <p>
+ * Every client has its own queue and the clients with waiting requests share the workers in proportion to the
+ * estimated cost of their requests, with the virtual time form of deficit round robin (start-time fair queueing):
+ * every client has a virtual start time, the client with the earliest one runs its next request, and its start time
+ * advances by the cost of that request. A client sending huge requests so gets the same share of work as a client
+ * sending small ones, and choosing a request costs a logarithm of the number of clients waiting.
+ * <p>
+ * Inside the queue of a client the request with the earliest deadline runs first: the deadline is the time the
+ * request was added plus one aging period for every doubling of its cost, so the cheap requests run first and a large
+ * request is not delayed forever by a stream of small ones.
+ * <p>
+ * A worker running a large request can call {@link #runWaiting(long)} between chunks of its work to run the small
+ * requests waiting meanwhile.
+ */
+public class FairScheduler implements Executor {
+
+    /**
+     * Queue of the requests of a client with its waiting times
+     */
+    public static class Client {
+
+        /**
+         * Scheduler of the client
+         */
+        private final FairScheduler scheduler;
+
+        /**
+         * Name of the client, used in the logs
+         */
+        private final String name;
+
+        /**
+         * Order of creation of the client, to break the ties between the virtual start times
+         */
+        private final long order;
+
+        /**
+         * Requests waiting by deadline, guarded by the lock of the scheduler
+         */
+        private final PriorityQueue<Job> jobs = new PriorityQueue<>(JOB_ORDER);
+
+        /**
+         * Virtual time when the next request of the client starts, guarded by the lock of the scheduler
+         */
+        private double start = 0;
+
+        /**
+         * Virtual time when the last request of the client taken from the queue ends, guarded by the lock of the
+         * scheduler
+         */
+        private double finish = 0;
+
+        /**
+         * True if the client is in the queue of the clients with waiting requests, guarded by the lock of the scheduler
+         */
+        private boolean active = false;
+
+        /**
+         * Total time in nanoseconds the requests of the client waited in the queue
+         */
+        private final LongAdder totalWait = new LongAdder();
+
+        /**
+         * Number of requests of the client taken from the queue
+         */
+        private final LongAdder started = new LongAdder();
+
+        /**
+         * Maximum time in nanoseconds a request of the client waited in the queue
+         */
+        private final LongAccumulator maxWait = new LongAccumulator(Math::max, 0);
+
+        /**
+         * Constructor to set the scheduler and the name
+         *
+         * @param scheduler scheduler of the client
+         * @param name      name of the client
+         */
+        private Client(FairScheduler scheduler, String name) {
+            this.scheduler = scheduler;
+            this.name = name;
+            this.order = scheduler.clientCount.getAndIncrement();
+        }
+
+        /**
+         * Get an executor adding its tasks to the queue of the client
+         *
+         * @param cost estimated cost of the tasks
+         * @return executor of the tasks
+         */
+        public Executor executor(long cost) {
+            return task -> scheduler.submit(this, cost, task);
+        }
+
+        /**
+         * Get the average time the requests of the client waited in the queue
+         *
+         * @return average waiting time in milliseconds
+         */
+        public double getAverageWait() {
+            long count = started.sum();
+            return count == 0 ? 0 : totalWait.sum() / 1e6 / count;
+        }
+
+        /**
+         * Get the maximum time a request of the client waited in the queue
+         *
+         * @return maximum waiting time in milliseconds
+         */
+        public double getMaxWait() {
+            return maxWait.get() / 1e6;
+        }
+
+        /**
+         * Get the name of the client
+         *
+         * @return name of the client
+         */
+        public String getName() {
+            return name;
+        }
+    }
+
+    /**
+     * Task waiting in the queue of a client
+     *
+     * @param task     task to run
+     * @param cost     estimated cost of the task
+     * @param enqueued system time in nanoseconds when the task was added
+     * @param deadline system time in nanoseconds used to order the tasks of a client
+     * @param sequence order of arrival of the task, to break the ties between the deadlines
+     */
+    private record Job(Runnable task, long cost, long enqueued, long deadline, long sequence) {
+    }
+
+    /**
+     * Order of the tasks of a client, by deadline and then by arrival
+     */
+    private static final Comparator<Job> JOB_ORDER =
+            Comparator.comparingLong(Job::deadline).thenComparingLong(Job::sequence);
+
+    /**
+     * Order of the clients with waiting tasks, by virtual start time and then by creation
+     */
+    private static final Comparator<Client> CLIENT_ORDER =
+            Comparator.<Client>comparingDouble(client -> client.start)
+                    .thenComparingLong(client -> client.order);
+
+    /**
+     * Lock of the queues
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition signalled when a task is added
+     */
+    private final Condition notEmpty = lock.newCondition();
+
+    /**
+     * Clients with waiting requests, by virtual start time
+     */
+    private final PriorityQueue<Client> waiting = new PriorityQueue<>(CLIENT_ORDER);
+
+    /**
+     * Virtual start time of the last task taken from the queues, guarded by the lock
+     */
+    private double virtualTime = 0;
+
+    /**
+     * Number of tasks added, guarded by the lock
+     */
+    private long taskCount = 0;
+
+    /**
+     * Number of clients created
+     */
+    private final AtomicLong clientCount = new AtomicLong();
+
+    /**
+     * Waiting time in nanoseconds that a request is moved back for every doubling of its cost
+     */
+    private final long agingNanos;
+
+    /**
+     * Client of the tasks submitted without a client
+     */
+    private final Client defaultClient;
+
+    /**
+     * Constructor, starts the worker threads, which do not keep the virtual machine alive
+     *
+     * @param workers     number of worker threads
+     * @param agingMillis waiting time in milliseconds that a request is moved back for every doubling of its cost
+     * @throws IllegalArgumentException if the number of workers or the aging period are not positive
+     */
+    public FairScheduler(int workers, long agingMillis) throws IllegalArgumentException {
+        if (workers <= 0 || agingMillis <= 0) {
+            throw new IllegalArgumentException("The workers and the aging period must be positive");
+        }
+        this.agingNanos = agingMillis * 1_000_000;
+        this.defaultClient = new Client(this, "default");
+        for (int i = 0; i < workers; i++) {
+            Thread worker = new Thread(this::work, "scheduler-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Create the queue of a new client
+     *
+     * @param name name of the client, used in the logs
+     * @return client to submit the requests with
+     */
+    public Client register(String name) {
+        return new Client(this, name);
+    }
+
+    /**
+     * Add a task to the queue of the default client, with a cost of 1
+     *
+     * @param task task to run
+     */
+    @Override
+    public void execute(Runnable task) {
+        submit(defaultClient, 1, task);
+    }
+
+    /**
+     * Add a task to the queue of a client
+     *
+     * @param client client of the task
+     * @param cost   estimated cost of the task
+     * @param task   task to run
+     */
+    private void submit(Client client, long cost, Runnable task) {
+        lock.lock();
+        try {
+            cost = Math.max(cost, 1);
+            long now = System.nanoTime();
+            long doublings = 63 - Long.numberOfLeadingZeros(cost);
+            client.jobs.add(new Job(task, cost, now, now + doublings * agingNanos, taskCount++));
+            if (!client.active) {
+                client.active = true;
+                client.start = Math.max(virtualTime, client.finish);
+                waiting.add(client);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loop of a worker thread
+     */
+    private void work() {
+        while (true) {
+            Job job;
+            lock.lock();
+            try {
+                while ((job = next(Long.MAX_VALUE)) == null) {
+                    notEmpty.awaitUninterruptibly();
+                }
+            } finally {
+                lock.unlock();
+            }
+            run(job);
+        }
+    }
+
+    /**
+     * Run the next waiting tasks while they do not cost more than a limit, at most one for each client waiting
+     * Called by a worker between the chunks of a large request, so the small requests do not wait for all of it
+     *
+     * @param maxCost maximum estimated cost of the tasks to run
+     */
+    public void runWaiting(long maxCost) {
+        int clients;
+        lock.lock();
+        try {
+            clients = waiting.size();
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < clients; i++) {
+            Job job;
+            lock.lock();
+            try {
+                job = next(maxCost);
+            } finally {
+                lock.unlock();
+            }
+            if (job == null) {
+                return;
+            }
+            run(job);
+        }
+    }
+
+    /**
+     * Run a task, its exceptions are printed and do not stop the worker
+     *
+     * @param job task to run
+     */
+    private void run(Job job) {
+        try {
+            job.task().run();
+        } catch (RuntimeException e) {
+            System.err.println("Task failed in the scheduler");
+            System.err.println(e.toString());
+        }
+    }
+
+    /**
+     * Take the next task to run: the task with the earliest deadline of the client with the earliest virtual start
+     * time, the lock must be held
+     *
+     * @param maxCost maximum estimated cost of the task
+     * @return task to run, null if no client is waiting or the next task costs more than the limit
+     */
+    private Job next(long maxCost) {
+        Client client = waiting.peek();
+        if (client == null || client.jobs.peek().cost() > maxCost) {
+            return null;
+        }
+        waiting.poll();
+        Job job = client.jobs.poll();
+        virtualTime = client.start;
+        client.finish = client.start + job.cost();
+        if (client.jobs.isEmpty()) {
+            client.active = false;
+        } else {
+            client.start = client.finish;
+            waiting.add(client);
+        }
+        long wait = System.nanoTime() - job.enqueued();
+        client.totalWait.add(wait);
+        client.started.increment();
+        client.maxWait.accumulate(wait);
+        return job;
+    }
+}
@@ -0,0 +1,119 @@
+package com.lucaf;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * Histogram of the times of the requests with a fixed memory, to get their percentiles
+ * <p>
+ * The buckets are log-linear like the ones of HdrHistogram: the values below 2^bits have a bucket each, and every
+ * following power of two is split in 2^(bits-1) buckets of the same width, so the width of a bucket is at most
+ * 1/2^(bits-1) of its values. The bits are chosen from the number of significant decimal digits to keep. Recording a
+ * value increments a single counter without locks or allocations, so it can be called by any thread.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of bits of the values with a bucket each
+     */
+    private final int bits;
+
+    /**
+     * Number of buckets of each power of two from 2^bits
+     */
+    private final long halfBuckets;
+
+    /**
+     * Counters of the buckets
+     */
+    private final AtomicLongArray counts;
+
+    /**
+     * Maximum value recorded
+     */
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Constructor to set the precision
+     *
+     * @param significantDigits number of significant decimal digits of the values, from 1 to 5
+     * @throws IllegalArgumentException if the number of digits is not between 1 and 5
+     */
+    public LatencyHistogram(int significantDigits) throws IllegalArgumentException {
+        if (significantDigits < 1 || significantDigits > 5) {
+            throw new IllegalArgumentException("The significant digits must be between 1 and 5");
+        }
+        long singleUnitValues = 2 * (long) Math.pow(10, significantDigits);
+        this.bits = 64 - Long.numberOfLeadingZeros(singleUnitValues - 1);
+        this.halfBuckets = 1L << (bits - 1);
+        this.counts = new AtomicLongArray((int) ((1L << bits) + (63 - bits) * halfBuckets));
+    }
+
+    /**
+     * Record a value, negative values are recorded as 0
+     *
+     * @param value value to record
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        counts.incrementAndGet(indexOf(value));
+        max.accumulate(value);
+    }
+
+    /**
+     * Get the value below which a percentage of the recorded values fall
+     * The result is the highest value of the bucket of the percentile, at most the maximum value recorded
+     *
+     * @param percentile percentage of the values, from 0 to 100
+     * @return value of the percentile, 0 if no value has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        int length = counts.length();
+        long total = 0;
+        for (int i = 0; i < length; i++) {
+            total += counts.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(Math.max(percentile, 0), 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < length; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return Math.min(highestValueOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Get the bucket of a value
+     *
+     * @param value value not negative
+     * @return index of the bucket
+     */
+    private int indexOf(long value) {
+        int shift = 64 - Long.numberOfLeadingZeros(value) - bits;
+        if (shift <= 0) {
+            return (int) value;
+        }
+        return (int) ((1L << bits) + (shift - 1) * halfBuckets + ((value >>> shift) - halfBuckets));
+    }
+
+    /**
+     * Get the highest value of a bucket
+     *
+     * @param index index of the bucket
+     * @return highest value falling in the bucket
+     */
+    private long highestValueOf(int index) {
+        if (index < (1L << bits)) {
+            return index;
+        }
+        long offset = index - (1L << bits);
+        int shift = (int) (offset / halfBuckets) + 1;
+        long top = offset % halfBuckets + halfBuckets;
+        return ((top + 1) << shift) - 1;
+    }
+}
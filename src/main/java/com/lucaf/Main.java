@@ -1,6 +1,10 @@
 package com.lucaf;
 
-import java.util.concurrent.Executors;
+import com.lucaf.cache.ResultCache;
+import com.lucaf.cache.TileCache;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Main class to start the server
@@ -9,15 +13,54 @@ public class Main {
 
     /**
      * Main method to start the server
+     * The mode is threads for a thread per connection, virtual for a virtual thread per connection, or nio for a few
+     * event loops handling all the connections
      *
-     * @param args [port]
+     * @param args [port] [threads|virtual|nio] [result cache size in MB, 0 to disable it] [result cache time to live in
+     *             seconds] [tile cache size in MB, 0 to disable it]
+     * @throws IOException if the NIO server can not be created
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException {
         if (args.length > 0) {
             Config.port = Integer.parseInt(args[0]);
         }
-        Config.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        TCPServer tcpServer = new TCPServer(Config.port);
-        tcpServer.start();
+        if (args.length > 1) {
+            Config.serverMode = args[1];
+        }
+        if (args.length > 2 && Long.parseLong(args[2]) > 0) {
+            long timeToLive = args.length > 3 ? Long.parseLong(args[3]) : 60;
+            Config.resultCache = new ResultCache(Long.parseLong(args[2]) << 20, timeToLive * 1000);
+        }
+        if (args.length > 4 && Long.parseLong(args[4]) > 0) {
+            Config.tileCache = new TileCache<>(Long.parseLong(args[4]) << 20, 64);
+        }
+        Config.forkJoinPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        startServer();
+    }
+
+    /**
+     * Start the server of {@link Config#serverMode} on {@link Config#port}
+     *
+     * @return thread of the server
+     * @throws IOException              if the NIO server can not be created
+     * @throws IllegalArgumentException if the mode is not known
+     */
+    public static Thread startServer() throws IOException, IllegalArgumentException {
+        Thread server;
+        switch (Config.serverMode) {
+            case "threads":
+                server = new TCPServer(Config.port);
+                break;
+            case "virtual":
+                server = new TCPServer(Config.port, true);
+                break;
+            case "nio":
+                server = new NIOServer(Config.port, Config.eventLoops);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown server mode " + Config.serverMode);
+        }
+        server.start();
+        return server;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,323 @@
+package com.lucaf;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Connection with a client handled by an {@link EventLoop}
+ * <p>
+ * The bytes read are split in lines as they arrive, a line ending with \n, \r or \r\n like
+ * {@link java.io.BufferedReader#readLine()}. The responses are queued by any thread and written by the event loop
+ * when the channel can accept them.
+ */
+public class NIOConnection implements ClientConnection {
+
+    /**
+     * Time in milliseconds without messages from the client after which the connection is closed
+     */
+    private static final long IDLE_TIMEOUT = 1000 * 60 * 5;
+
+    /**
+     * Maximum length in bytes of a message, the connection is closed if a message is longer
+     */
+    private static final int MAX_LINE_LENGTH = 1 << 20;
+
+    /**
+     * Channel of the connection
+     */
+    private final SocketChannel channel;
+
+    /**
+     * Event loop of the connection
+     */
+    private final EventLoop eventLoop;
+
+    /**
+     * Dispatcher of the requests of the client, created when the connection is registered by the event loop
+     */
+    private RequestDispatcher requestDispatcher;
+
+    /**
+     * Address of the client
+     */
+    private final String address;
+
+    /**
+     * Responses waiting to be written
+     */
+    private final Queue<ByteBuffer> output = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Key of the channel in the selector, set by the event loop
+     */
+    private SelectionKey key = null;
+
+    /**
+     * Bytes of the incomplete line, null if the last read ended with a line
+     */
+    private byte[] line = null;
+
+    /**
+     * Number of bytes of the incomplete line
+     */
+    private int lineLength = 0;
+
+    /**
+     * True if the last byte read was a \r, so a following \n does not end another line
+     */
+    private boolean skipLineFeed = false;
+
+    /**
+     * System time in milliseconds of the last read
+     */
+    private long lastRead = System.currentTimeMillis();
+
+    /**
+     * True if the connection must be closed after writing the responses queued
+     */
+    private volatile boolean closing = false;
+
+    /**
+     * True if the channel is closed
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Constructor, sets the channel in non-blocking mode
+     *
+     * @param channel   channel of the connection
+     * @param eventLoop event loop of the connection
+     * @throws IOException if the channel can not be configured
+     */
+    public NIOConnection(SocketChannel channel, EventLoop eventLoop) throws IOException {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        channel.configureBlocking(false);
+        InetSocketAddress remote = (InetSocketAddress) channel.getRemoteAddress();
+        this.address = remote.getAddress().getHostAddress() + ":" + remote.getPort();
+    }
+
+    /**
+     * Register the channel in the selector of the event loop, called by the event loop
+     *
+     * @param selector selector of the event loop
+     */
+    void register(Selector selector) {
+        requestDispatcher = new RequestDispatcher(this);
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+            System.out.println("TCP connection established with " + address);
+        } catch (ClosedChannelException e) {
+            close();
+        }
+    }
+
+    /**
+     * Read the available bytes and dispatch the complete lines, called by the event loop
+     * An error thrown while handling a message closes only this connection, so the event loop keeps serving the others
+     *
+     * @param buffer buffer of the event loop
+     */
+    void read(ByteBuffer buffer) {
+        while (true) {
+            buffer.clear();
+            int read;
+            try {
+                read = channel.read(buffer);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                close();
+                return;
+            }
+            if (read == 0) {
+                return;
+            }
+            lastRead = System.currentTimeMillis();
+            buffer.flip();
+            boolean reading;
+            try {
+                reading = frame(buffer);
+            } catch (Throwable e) {
+                System.err.println("Failed to handle a message from " + address + ", closing the connection");
+                System.err.println(e.toString());
+                close();
+                return;
+            }
+            if (!reading) {
+                if (!closed) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Split the bytes read in lines, keeping the bytes of the last incomplete line
+     *
+     * @param buffer bytes read
+     * @return false if the connection has been closed or the client asked to close it
+     */
+    private boolean frame(ByteBuffer buffer) {
+        int start = buffer.position();
+        for (int i = start; i < buffer.limit(); i++) {
+            byte b = buffer.get(i);
+            if (b != '\n' && b != '\r') {
+                skipLineFeed = false;
+                continue;
+            }
+            if (b == '\n' && skipLineFeed) {
+                skipLineFeed = false;
+                start = i + 1;
+                continue;
+            }
+            skipLineFeed = b == '\r';
+            if (!append(buffer, start, i)) {
+                return false;
+            }
+            requestDispatcher.dispatch(line == null ? "" : new String(line, 0, lineLength, StandardCharsets.UTF_8));
+            line = null;
+            lineLength = 0;
+            start = i + 1;
+            if (closing) {
+                return false;
+            }
+        }
+        return append(buffer, start, buffer.limit());
+    }
+
+    /**
+     * Append bytes of the buffer to the incomplete line
+     *
+     * @param buffer buffer with the bytes
+     * @param from   first byte to append
+     * @param to     last byte to append (excluded)
+     * @return false if the line is too long and the connection has been closed
+     */
+    private boolean append(ByteBuffer buffer, int from, int to) {
+        int length = to - from;
+        if (length == 0) {
+            return true;
+        }
+        if (lineLength + length > MAX_LINE_LENGTH) {
+            System.out.println("Message too long from " + address);
+            close();
+            return false;
+        }
+        if (line == null) {
+            line = new byte[Math.max(length, 64)];
+        } else if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(lineLength + length, line.length * 2));
+        }
+        buffer.get(from, line, lineLength, length);
+        lineLength += length;
+        return true;
+    }
+
+    /**
+     * Write the queued responses until the channel is full, called by the event loop
+     * The connection waits for the channel to be writable if some bytes are left, and is closed when all the
+     * responses have been written if the client asked so
+     */
+    void write() {
+        if (closed || key == null) {
+            return;
+        }
+        try {
+            ByteBuffer buffer;
+            while ((buffer = output.peek()) != null) {
+                channel.write(buffer);
+                if (buffer.hasRemaining()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                    return;
+                }
+                output.poll();
+            }
+            key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+            if (closing) {
+                close();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to send message to " + address);
+            System.err.println(e.toString());
+            close();
+        }
+    }
+
+    /**
+     * Close the connection if the client has not sent messages for too long, called by the event loop
+     *
+     * @param now system time in milliseconds
+     */
+    void closeIfIdle(long now) {
+        if (now - lastRead > IDLE_TIMEOUT) {
+            close();
+        }
+    }
+
+    /**
+     * Close the channel, called by the event loop
+     */
+    private void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        output.clear();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            System.out.println("TCP connection closed with " + address);
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close TCP connection with " + address);
+            System.err.println(e.toString());
+        }
+    }
+
+    /**
+     * Queue a message to send to the client, it can be called by any thread
+     *
+     * @param message message to send, without the line terminator
+     */
+    @Override
+    public void sendMessage(String message) {
+        if (closed) {
+            return;
+        }
+        output.add(ByteBuffer.wrap((message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)));
+        eventLoop.flush(this);
+    }
+
+    /**
+     * Close the connection after the responses already queued, the messages still to read are ignored
+     */
+    @Override
+    public void closeConnection() {
+        closing = true;
+        eventLoop.flush(this);
+    }
+
+    /**
+     * Method to get the address of the client
+     *
+     * @return address and port of the client
+     */
+    @Override
+    public String getAddress() {
+        return address;
+    }
+}
@@ -0,0 +1,67 @@
+package com.lucaf;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Non-blocking TCP server class as a thread
+ * <p>
+ * The connections are spread over a small number of {@link EventLoop} threads, each one reading and writing all its
+ * connections with a {@link java.nio.channels.Selector}. The requests run on {@link Config#scheduler}, so idle
+ * clients cost only their buffers.
+ */
+public class NIOServer extends Thread {
+
+    /**
+     * Port to listen to
+     */
+    private final int port;
+
+    /**
+     * Event loops handling the connections
+     */
+    private final EventLoop[] eventLoops;
+
+    /**
+     * Constructor
+     *
+     * @param port       port to listen to
+     * @param eventLoops number of event loop threads
+     * @throws IOException if a selector can not be opened
+     */
+    public NIOServer(int port, int eventLoops) throws IOException {
+        this.port = port;
+        this.eventLoops = new EventLoop[Math.max(eventLoops, 1)];
+        for (int i = 0; i < this.eventLoops.length; i++) {
+            this.eventLoops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * Run method to start the server thread
+     * It accepts the connections and assigns them to the event loops in turn
+     */
+    @Override
+    public void run() {
+        System.out.println("Starting NIO server on port " + port + " with " + eventLoops.length + " event loops");
+        for (EventLoop eventLoop : eventLoops) {
+            eventLoop.start();
+        }
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port), 1024);
+            System.out.println("NIO server started on port " + port);
+            long accepted = 0;
+            while (true) {
+                SocketChannel channel = serverChannel.accept();
+                EventLoop eventLoop = eventLoops[(int) (accepted++ % eventLoops.length)];
+                eventLoop.register(new NIOConnection(channel, eventLoop));
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to start NIO server on port " + port);
+            System.err.println(e.toString());
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.lucaf;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Buffer putting back in order the responses of the requests of a connection, which complete in any order
+ * <p>
+ * Every request has a sequence number given in the order of arrival. The delivery of a response, which sends it to
+ * the client, is kept until the deliveries of all the previous requests have been run. The deliveries run outside the
+ * lock, one at a time and in order, by the thread that found them ready when no other thread was delivering.
+ */
+public class ReorderBuffer {
+
+    /**
+     * Lock of the buffer, held only to move the deliveries between the maps and the queue
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Deliveries of the requests completed before a previous one, by sequence number
+     */
+    private final Map<Long, Runnable> completed = new HashMap<>();
+
+    /**
+     * Deliveries in order waiting to be run
+     */
+    private final Queue<Runnable> ready = new ArrayDeque<>();
+
+    /**
+     * True while a thread is running the ready deliveries
+     */
+    private boolean delivering = false;
+
+    /**
+     * Sequence number of the next delivery to run
+     */
+    private long next = 0;
+
+    /**
+     * Add the delivery of a completed request, and run all the deliveries that are now in order unless another thread
+     * is already running them
+     *
+     * @param sequence sequence number of the request
+     * @param delivery action sending the response of the request
+     */
+    public void complete(long sequence, Runnable delivery) {
+        lock.lock();
+        try {
+            completed.put(sequence, delivery);
+            Runnable inOrder;
+            while ((inOrder = completed.remove(next)) != null) {
+                next++;
+                ready.add(inOrder);
+            }
+            if (delivering || ready.isEmpty()) {
+                return;
+            }
+            delivering = true;
+        } finally {
+            lock.unlock();
+        }
+        while (true) {
+            Runnable deliveryToRun;
+            lock.lock();
+            try {
+                deliveryToRun = ready.poll();
+                if (deliveryToRun == null) {
+                    delivering = false;
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            try {
+                deliveryToRun.run();
+            } catch (RuntimeException e) {
+                System.err.println("Failed to deliver a response");
+                System.err.println(e.toString());
+            }
+        }
+    }
+
+    /**
+     * Get the number of completed requests whose response has not been delivered yet
+     *
+     * @return number of deliveries kept
+     */
+    public int getPending() {
+        lock.lock();
+        try {
+            return completed.size() + ready.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
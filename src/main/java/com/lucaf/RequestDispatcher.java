@@ -0,0 +1,188 @@
+package com.lucaf;
+
+import com.lucaf.datatypes.ComputeRequest;
+import com.lucaf.datatypes.Request;
+import com.lucaf.datatypes.Response;
+import com.lucaf.datatypes.StatRequest;
+
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Class to run the requests of a client, shared by all the server modes
+ * <p>
+ * The computation requests of the client are started as soon as they are received and run concurrently on
+ * {@link Config#scheduler}, in the queue of the client and with their estimated cost, while the statistics requests
+ * and BYE are answered at once by the thread reading the messages. All the responses go through a
+ * {@link ReorderBuffer}, so they are still sent in the order of the requests, by the thread completing the request
+ * that was holding them back.
+ */
+public class RequestDispatcher {
+
+    /**
+     * Connection with the client
+     */
+    private final ClientConnection connection;
+
+    /**
+     * Responses completed before the response of a previous request
+     */
+    private final ReorderBuffer reorderBuffer = new ReorderBuffer();
+
+    /**
+     * Queue of the client in {@link Config#scheduler}, created with the first request
+     */
+    private FairScheduler.Client client = null;
+
+    /**
+     * Sequence number of the next request, used only by the thread reading the messages of the client
+     */
+    private long sequence = 0;
+
+    /**
+     * True if the client sent BYE, the following messages are ignored
+     */
+    private boolean quit = false;
+
+    /**
+     * Constructor to set the connection
+     *
+     * @param connection connection with the client
+     */
+    public RequestDispatcher(ClientConnection connection) {
+        this.connection = connection;
+    }
+
+    /**
+     * Send a response once the responses of the previous requests have been sent
+     *
+     * @param sequence sequence number of the request
+     * @param response response to send
+     */
+    private void reply(long sequence, Response response) {
+        String message = response.toString();
+        reorderBuffer.complete(sequence, () -> connection.sendMessage(message));
+    }
+
+    /**
+     * Get the queue of the client in {@link Config#scheduler}, creating it with the first request
+     *
+     * @return queue of the client
+     */
+    private FairScheduler.Client getClient() {
+        if (client == null) {
+            client = Config.scheduler.register(connection.getAddress());
+        }
+        return client;
+    }
+
+    /**
+     * Method to run a message received from the client
+     *
+     * @param message message received, without the line terminator
+     */
+    public void dispatch(String message) {
+        if (quit) {
+            return;
+        }
+        long receivedAt = System.nanoTime();
+        System.out.println("Received message from " + connection.getAddress() + ": " + message);
+        long sequence = this.sequence++;
+        try {
+            Request request = new Request(message);
+            Request.RequestType requestType = request.getRequestType();
+            if (requestType == null) {
+                System.out.println("Unknown request type: " + message);
+                reply(sequence, new Response(new String[]{"(IllegalCommand) Unknown request type"}));
+            } else if (requestType == Request.RequestType.QuitRequest) {
+                quit = true;
+                String response = new Response(true).toString();
+                reorderBuffer.complete(sequence, () -> {
+                    connection.sendMessage(response);
+                    connection.closeConnection();
+                });
+            } else if (requestType == Request.RequestType.ComputationRequest) {
+                ComputeRequest computeRequest = request.getComputeRequest();
+                Computation computation = new Computation(computeRequest);
+                long cost = computation.estimateCost();
+                AdmissionController admissionController = Config.admissionController;
+                if (admissionController != null && admissionController.isTooLarge(cost)) {
+                    System.out.println("Rejected request with cost " + cost + " from " + connection.getAddress());
+                    reply(sequence, new Response(new String[]{"(Overloaded) The request is too large"}));
+                } else if (admissionController != null && !admissionController.tryAcquire(cost)) {
+                    System.out.println("Rejected request with cost " + cost + " from " + connection.getAddress() + ", the server is busy");
+                    reply(sequence, new Response(new String[]{"(Overloaded) The server is busy, retry later"}));
+                } else {
+                    try {
+                        ComputationAsync computationAsync = getComputationAsync(computation, receivedAt, sequence, admissionController, cost);
+                        computationAsync.start();
+                    } catch (RuntimeException e) {
+                        if (admissionController != null) {
+                            admissionController.release(cost);
+                        }
+                        throw e;
+                    }
+                }
+            } else if (requestType == Request.RequestType.StatRequest) {
+                StatRequest statRequest = request.getStatRequest();
+                answerStats(new Stats(statRequest, getClient()), receivedAt, sequence);
+            }
+        } catch (RuntimeException e) {
+            reply(sequence, new Response(new String[]{"(Exception) " + e.toString()}));
+        }
+    }
+
+    /**
+     * Method to get the computation async object from the request
+     *
+     * @param computation         computation to run
+     * @param receivedAt          system time in nanoseconds when the request was received
+     * @param sequence            sequence number of the request
+     * @param admissionController admission controller to give the cost back to, null if the request is not limited
+     * @param cost                cost reserved by the request
+     * @return computation async object
+     */
+    private ComputationAsync getComputationAsync(Computation computation, long receivedAt, long sequence, AdmissionController admissionController, long cost) {
+        ComputeRequest computeRequest = computation.computeRequest;
+        String key = computeRequest.getErrorMessage().isEmpty() ? computeRequest.getCanonicalKey() : null;
+        return new ComputationAsync(computation, key, getClient().executor(cost), new ComputationListener() {
+            @Override
+            public void onComputationAsyncComplete(Response response) {
+                if (admissionController != null) {
+                    admissionController.release(cost);
+                }
+                if (response.isOk()) {
+                    Stats.addRequest(response.getTime(), response.isCacheHit());
+                }
+                reply(sequence, response);
+            }
+
+            @Override
+            public void onComputationAsyncError(Exception e) {
+                if (admissionController != null) {
+                    admissionController.release(cost);
+                }
+                Response response = new Response(new String[]{"(Exception) " + e.toString()});
+                reply(sequence, response);
+            }
+        });
+    }
+
+    /**
+     * Answer a statistics request on the thread reading the messages, without going through {@link Config#scheduler}
+     * The statistics are read from counters, so they are answered at once even while every worker is computing
+     *
+     * @param stats      stats to get
+     * @param receivedAt system time in nanoseconds when the request was received
+     * @param sequence   sequence number of the request
+     */
+    private void answerStats(Stats stats, long receivedAt, long sequence) {
+        Response response;
+        try {
+            response = stats.call();
+            response.setTime(System.nanoTime() - receivedAt);
+        } catch (Exception e) {
+            response = new Response(new String[]{"(Exception) " + new ExecutionException(e)});
+        }
+        reply(sequence, response);
+    }
+}
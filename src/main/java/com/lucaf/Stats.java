@@ -3,9 +3,9 @@ package com.lucaf;
 import com.lucaf.datatypes.Response;
 import com.lucaf.datatypes.StatRequest;
 
-import java.util.ArrayList;
-import java.util.Collection;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Class to handle the statistics requests
@@ -14,15 +14,100 @@ public class Stats implements Callable<Response> {
     /**
      * Number of requests
      */
-    private static Collection<Long> times = new ArrayList<>();
+    private static final LongAdder requests = new LongAdder();
+
+    /**
+     * Total time of the requests in nanoseconds
+     */
+    private static final LongAdder totalTime = new LongAdder();
+
+    /**
+     * Maximum time of a request in nanoseconds
+     */
+    private static final LongAccumulator maxTime = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Number of requests answered from the result cache
+     */
+    private static final LongAdder cacheHits = new LongAdder();
+
+    /**
+     * Number of nodes of the expressions of the computed requests before the optimization
+     */
+    private static final LongAdder parsedNodes = new LongAdder();
+
+    /**
+     * Number of nodes of the expressions of the computed requests after the optimization
+     */
+    private static final LongAdder optimizedNodes = new LongAdder();
+
+    /**
+     * Histogram of the times of the requests in nanoseconds, for the percentiles
+     */
+    private static final LatencyHistogram histogram = new LatencyHistogram(Config.latencyPrecision);
 
     /**
      * Add a request with time to the statistics
      *
-     * @param time time of the request
+     * @param time time of the request in nanoseconds
      */
     public static void addRequest(long time) {
-        times.add(time);
+        addRequest(time, false);
+    }
+
+    /**
+     * Add a request with time to the statistics, it can be called by any thread
+     *
+     * @param time     time of the request in nanoseconds
+     * @param cacheHit true if the request was answered from the result cache
+     */
+    public static void addRequest(long time, boolean cacheHit) {
+        requests.increment();
+        totalTime.add(time);
+        maxTime.accumulate(time);
+        histogram.record(time);
+        if (cacheHit) {
+            cacheHits.increment();
+        }
+    }
+
+    /**
+     * Add the nodes of the expressions of a computed request, before and after the optimization, it can be called by
+     * any thread
+     *
+     * @param parsed    number of nodes of the parsed trees
+     * @param optimized number of nodes of the optimized trees
+     */
+    public static void addNodes(long parsed, long optimized) {
+        parsedNodes.add(parsed);
+        optimizedNodes.add(optimized);
+    }
+
+    /**
+     * Get the number of nodes of the expressions of the computed requests before the optimization
+     *
+     * @return number of parsed nodes
+     */
+    public static long getParsedNodes() {
+        return parsedNodes.sum();
+    }
+
+    /**
+     * Get the number of nodes of the expressions of the computed requests after the optimization
+     *
+     * @return number of optimized nodes
+     */
+    public static long getOptimizedNodes() {
+        return optimizedNodes.sum();
+    }
+
+    /**
+     * Get the number of requests answered from the result cache
+     *
+     * @return number of requests not computed
+     */
+    public static long getCacheHits() {
+        return cacheHits.sum();
     }
 
     /**
@@ -30,26 +115,47 @@ public class Stats implements Callable<Response> {
      *
      * @return number of requests
      */
-    public static int getRequests() {
-        return times.size();
+    public static long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Get the total time of the requests
+     *
+     * @return sum of the times of the requests in nanoseconds
+     */
+    public static long getTotalTime() {
+        return totalTime.sum();
     }
 
     /**
      * Get the average time of the requests
+     * The counters are read one after the other, so a request added meanwhile can be counted only in one of them
      *
-     * @return average time of the requests
+     * @return average time of the requests in seconds
      */
     public static double getAvgTime() {
-        return ((double) times.stream().mapToLong(Long::longValue).average().orElse(0)) / 1000.0;
+        long count = requests.sum();
+        return count == 0 ? 0 : totalTime.sum() / 1e9 / count;
     }
 
     /**
      * Get the maximum time of the requests
      *
-     * @return maximum time of the requests
+     * @return maximum time of the requests in seconds
      */
     public static double getMaxTime() {
-        return ((double) times.stream().mapToLong(Long::longValue).max().orElse(0)) / 1000.0;
+        return maxTime.get() / 1e9;
+    }
+
+    /**
+     * Get a percentile of the times of the requests
+     *
+     * @param percentile percentage of the requests, from 0 to 100
+     * @return time in seconds within which the percentage of the requests completed
+     */
+    public static double getTimeAtPercentile(double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1e9;
     }
 
     /**
@@ -57,13 +163,29 @@ public class Stats implements Callable<Response> {
      */
     private final StatRequest request;
 
+    /**
+     * Queue of the client asking the statistics in {@link Config#scheduler}, null if not known
+     */
+    private final FairScheduler.Client client;
+
     /**
      * Constructor to set the StatRequest
      *
      * @param request StatRequest with the request information
      */
     public Stats(StatRequest request) {
+        this(request, null);
+    }
+
+    /**
+     * Constructor to set the StatRequest and the client asking the statistics
+     *
+     * @param request StatRequest with the request information
+     * @param client  queue of the client in {@link Config#scheduler}, null if not known
+     */
+    public Stats(StatRequest request, FairScheduler.Client client) {
         this.request = request;
+        this.client = client;
     }
 
     /**
@@ -83,6 +205,44 @@ public class Stats implements Callable<Response> {
                 return new Response(getAvgTime());
             case MAX_TIME:
                 return new Response(getMaxTime());
+            case P50_TIME:
+                return new Response(getTimeAtPercentile(50));
+            case P90_TIME:
+                return new Response(getTimeAtPercentile(90));
+            case P99_TIME:
+                return new Response(getTimeAtPercentile(99));
+            case P999_TIME:
+                return new Response(getTimeAtPercentile(99.9));
+            case CACHE_HITS:
+                return new Response(Config.expressionCache.getHits());
+            case CACHE_MISSES:
+                return new Response(Config.expressionCache.getMisses());
+            case CACHE_EVICTIONS:
+                return new Response(Config.expressionCache.getEvictions());
+            case RESULT_CACHE_HITS:
+                return new Response(getCacheHits());
+            case RESULT_CACHE_MISSES:
+                return new Response(Config.resultCache == null ? 0 : Config.resultCache.getMisses());
+            case RESULT_CACHE_EVICTIONS:
+                return new Response(Config.resultCache == null ? 0 : Config.resultCache.getEvictions());
+            case TILE_CACHE_HITS:
+                return new Response(Config.tileCache == null ? 0 : Config.tileCache.getHits());
+            case TILE_CACHE_MISSES:
+                return new Response(Config.tileCache == null ? 0 : Config.tileCache.getMisses());
+            case TILE_CACHE_EVICTIONS:
+                return new Response(Config.tileCache == null ? 0 : Config.tileCache.getEvictions());
+            case SAVED_COMPUTATIONS:
+                return new Response(Config.inFlightComputations == null ? 0 : Config.inFlightComputations.getSaved());
+            case REJECTED_REQS:
+                return new Response(Config.admissionController == null ? 0 : Config.admissionController.getRejected());
+            case QUEUE_WAIT:
+                return new Response(client == null ? 0 : client.getAverageWait() / 1000.0);
+            case MAX_QUEUE_WAIT:
+                return new Response(client == null ? 0 : client.getMaxWait() / 1000.0);
+            case PARSED_NODES:
+                return new Response(getParsedNodes());
+            case OPTIMIZED_NODES:
+                return new Response(getOptimizedNodes());
         }
         return new Response(new String[]{"Invalid stat kind"});
     }
@@ -14,6 +14,11 @@ public class TCPServer extends Thread {
      */
     private final int port;
 
+    /**
+     * True to run each connection on a virtual thread
+     */
+    private final boolean virtual;
+
     /**
      * Constructor
      *
@@ -21,23 +26,39 @@ public class TCPServer extends Thread {
      */
 
     public TCPServer(int port) {
+        this(port, false);
+    }
+
+    /**
+     * Constructor
+     * The expressions are still evaluated by {@link Config#scheduler}, sized to the number of processors
+     *
+     * @param port    port to listen to
+     * @param virtual true to run each connection on a virtual thread
+     */
+    public TCPServer(int port, boolean virtual) {
         this.port = port;
+        this.virtual = virtual;
     }
 
     /**
      * Run method to start the server thread
-     * It listens to the port and creates a new thread for each connection
+     * It listens to the port and creates a new platform or virtual thread for each connection
      */
     @Override
     public void run() {
-        System.out.println("Starting TCP server on port " + port);
+        System.out.println("Starting TCP server on port " + port + (virtual ? " with virtual threads" : ""));
         try {
-            ServerSocket serverSocket = new ServerSocket(port);
+            ServerSocket serverSocket = new ServerSocket(port, 1024);
             System.out.println("TCP server started on port " + port);
             while (true) {
                 Socket socket = serverSocket.accept();
-                ClientHandler tcpMessagging = new ClientHandler(socket);
-                tcpMessagging.start();
+                if (virtual) {
+                    Thread.ofVirtual().start(new ClientHandler(socket));
+                } else {
+                    ClientHandler tcpMessagging = new ClientHandler(socket);
+                    new Thread(tcpMessagging).start();
+                }
             }
         } catch (IOException e) {
             System.err.println("Failed to start TCP server on port " + port);
@@ -0,0 +1,139 @@
+package com.lucaf.benchmark;
+
+import com.lucaf.Config;
+import com.lucaf.Main;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Load test of a server mode, opens many connections sending one request each and prints the threads and the memory
+ * used with all of them open
+ * <p>
+ * The server runs in the same process, the clients are blocking channels used by the main thread only, so the threads
+ * counted are the ones of the server. The connections need two file descriptors each (ulimit -n).
+ */
+public class ConnectionLoadTest {
+
+    /**
+     * Request sent by every connection
+     */
+    private static final String REQUEST = "MAX_GRID;x:0:1:10;x^2\n";
+
+    /**
+     * Main method to run the load test
+     *
+     * @param args [threads|virtual|nio] [connections] [port]
+     * @throws Exception if a connection fails
+     */
+    public static void main(String[] args) throws Exception {
+        Config.serverMode = args.length > 0 ? args[0] : "nio";
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+        Config.port = args.length > 2 ? Integer.parseInt(args[2]) : 9100;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        Main.startServer();
+        long baseline = usedMemory();
+        int baselineThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+        long start = System.nanoTime();
+        List<SocketChannel> channels = new ArrayList<>();
+        for (int i = 0; i < connections; i++) {
+            channels.add(connect());
+        }
+        long connected = System.nanoTime();
+        ByteBuffer request = ByteBuffer.wrap(REQUEST.getBytes(StandardCharsets.UTF_8));
+        for (SocketChannel channel : channels) {
+            channel.write(request.duplicate());
+        }
+        ByteBuffer response = ByteBuffer.allocate(256);
+        int answered = 0;
+        for (SocketChannel channel : channels) {
+            if (readLine(channel, response).startsWith("OK")) {
+                answered++;
+            }
+        }
+        long done = System.nanoTime();
+
+        int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+        long memory = usedMemory();
+        System.err.printf("mode %s: %d connections in %.0f ms, %d answered in %.0f ms%n", Config.serverMode,
+                channels.size(), (connected - start) / 1e6, answered, (done - connected) / 1e6);
+        System.err.printf("threads %d (%d before), heap %.1f MB (%.1f MB before), direct buffers %.1f MB%n",
+                threads, baselineThreads, memory / 1048576.0, baseline / 1048576.0, directMemory() / 1048576.0);
+        for (SocketChannel channel : channels) {
+            channel.close();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Open a connection to the server, retrying while it is starting
+     *
+     * @return connected channel
+     * @throws Exception if the server does not accept the connection
+     */
+    private static SocketChannel connect() throws Exception {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return SocketChannel.open(new InetSocketAddress("localhost", Config.port));
+            } catch (IOException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+                Thread.sleep(100);
+            }
+        }
+    }
+
+    /**
+     * Read a line from a channel
+     *
+     * @param channel channel to read
+     * @param buffer  buffer for the bytes of the line
+     * @return line read, without the line terminator
+     * @throws IOException if the channel is closed
+     */
+    private static String readLine(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.position() == 0 || buffer.get(buffer.position() - 1) != '\n') {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8).trim();
+    }
+
+    /**
+     * Get the heap used after a garbage collection
+     *
+     * @return used heap in bytes
+     */
+    private static long usedMemory() {
+        System.gc();
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Get the memory of the direct buffers
+     *
+     * @return direct memory in bytes
+     */
+    private static long directMemory() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+}
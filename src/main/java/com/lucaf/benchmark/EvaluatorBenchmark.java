@@ -0,0 +1,85 @@
+package com.lucaf.benchmark;
+
+import com.lucaf.evaluator.BytecodeCompiler;
+import com.lucaf.evaluator.CompiledExpression;
+import com.lucaf.evaluator.Parser;
+import com.lucaf.evaluator.Program;
+
+import java.util.List;
+
+/**
+ * Benchmark of the evaluation tiers, prints the points per second of the interpreter and of the generated classes
+ */
+public class EvaluatorBenchmark {
+
+    /**
+     * Expressions to benchmark
+     */
+    private static final String[] EXPRESSIONS = {
+            "x*y+2",
+            "((x+1)*(y-2))^2/(x+0.5)",
+            "x*y/(x-y)+x^y-3*2^x",
+            "(x^2+y^2)*z-(x*y-z^2+x*z)/(1+x^2)",
+    };
+
+    /**
+     * Number of points evaluated for each measure
+     */
+    private static final int POINTS = 5_000_000;
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        List<String> variables = List.of("x", "y", "z");
+        for (String expression : EXPRESSIONS) {
+            Parser parser = new Parser(expression, variables);
+            parser.initialize();
+            Program program = parser.getProgram();
+            double interpreted = measure(program.interpreter());
+            double compiled = measure(BytecodeCompiler.compile(program));
+            System.out.printf("%-40s interpreter: %,14.0f points/s  compiled: %,14.0f points/s  (x%.1f)%n",
+                    expression, interpreted, compiled, compiled / interpreted);
+        }
+    }
+
+    /**
+     * Measure the points per second of an expression, after a warm up run
+     *
+     * @param expression expression to measure
+     * @return points per second
+     */
+    private static double measure(CompiledExpression expression) {
+        run(expression);
+        long start = System.nanoTime();
+        double sink = run(expression);
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return POINTS / (elapsed / 1e9);
+    }
+
+    /**
+     * Evaluate the expression over a grid of points
+     *
+     * @param expression expression to evaluate
+     * @return sum of the results, to keep the JIT from removing the evaluation
+     */
+    private static double run(CompiledExpression expression) {
+        double[] point = new double[3];
+        double sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            point[0] = 0.5 + (i % 1000) * 0.001;
+            point[1] = 1.5 + (i % 700) * 0.002;
+            point[2] = (i % 13) * 0.25;
+            double result = expression.eval(point);
+            if (!Double.isNaN(result)) {
+                sum += result;
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,127 @@
+package com.lucaf.benchmark;
+
+import com.lucaf.evaluator.Accumulator;
+import com.lucaf.evaluator.BlockKernel;
+import com.lucaf.evaluator.Evaluator;
+import com.lucaf.evaluator.GridEvaluator;
+import com.lucaf.evaluator.ListEvaluator;
+import com.lucaf.evaluator.Parser;
+import com.lucaf.evaluator.Program;
+import jdk.incubator.vector.DoubleVector;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Benchmark of the vectorized evaluation, prints the points per second of the generated classes and of the Vector API
+ * over lists and grids
+ * It must be run with --add-modules jdk.incubator.vector
+ */
+public class VectorBenchmark {
+
+    /**
+     * Expressions to benchmark
+     */
+    private static final String[] EXPRESSIONS = {
+            "x*y+2",
+            "((x+1)*(y-2))*((x+1)*(y-2))/(x+0.5)",
+            "x*y/(x-y)+x^y-3*2^x",
+            "(x*x+y*y)*z-(x*y-z*z+x*z)/(1+x*x)",
+    };
+
+    /**
+     * Variables of the expressions
+     */
+    private static final List<String> VARIABLES = List.of("x", "y", "z");
+
+    /**
+     * Lower bound of each variable
+     */
+    private static final double[] LOWERS = {0.5, 1.5, 0};
+
+    /**
+     * Step of each variable
+     */
+    private static final double[] STEPS = {0.001, 0.002, 0.25};
+
+    /**
+     * Number of points of the lists
+     */
+    private static final int POINTS = 4_000_000;
+
+    /**
+     * Size of each dimension of the grids
+     */
+    private static final int[] SIZES = {1000, 2000, 4};
+
+    /**
+     * Main method to run the benchmark
+     *
+     * @param args unused
+     */
+    public static void main(String[] args) {
+        if (!BlockKernel.VECTOR_AVAILABLE) {
+            System.out.println("The Vector API is not available, run with --add-modules jdk.incubator.vector");
+            return;
+        }
+        System.out.println("Vector shape: " + DoubleVector.SPECIES_PREFERRED.length() + " doubles");
+        for (String expression : EXPRESSIONS) {
+            Parser parser = new Parser(expression, VARIABLES);
+            parser.initialize();
+            Program program = parser.getProgram();
+            compare("LIST " + expression, p -> new ListEvaluator(p, LOWERS, STEPS, POINTS), program);
+            compare("GRID " + expression, p -> new GridEvaluator(p, LOWERS, STEPS, SIZES), program);
+        }
+    }
+
+    /**
+     * Print the points per second of an evaluator compiled into generated classes and vectorized, when possible
+     *
+     * @param name      name of the measure
+     * @param evaluator function creating the evaluator of a program
+     * @param program   program to evaluate
+     */
+    private static void compare(String name, Function<Program, Evaluator> evaluator, Program program) {
+        Evaluator compiled = evaluator.apply(program);
+        compiled.compile();
+        Evaluator vectorized = evaluator.apply(program);
+        if (!vectorized.vectorize()) {
+            vectorized.compile();
+        }
+        double scalar = measure(compiled);
+        double vector = measure(vectorized);
+        System.out.printf("%-45s compiled: %,14.0f points/s  vectorized: %,14.0f points/s  (x%.1f)%n",
+                name, scalar, vector, vector / scalar);
+    }
+
+    /**
+     * Measure the points per second of an evaluator, after some warm up runs
+     *
+     * @param evaluator evaluator to measure
+     * @return points per second
+     */
+    private static double measure(Evaluator evaluator) {
+        for (int i = 0; i < 3; i++) {
+            run(evaluator);
+        }
+        long start = System.nanoTime();
+        double sink = run(evaluator);
+        long elapsed = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.println();
+        }
+        return evaluator.getPointCount() / (elapsed / 1e9);
+    }
+
+    /**
+     * Evaluate all the points of an evaluator
+     *
+     * @param evaluator evaluator to run
+     * @return average of the results, to keep the JIT from removing the evaluation
+     */
+    private static double run(Evaluator evaluator) {
+        Accumulator accumulator = new Accumulator();
+        evaluator.evaluate(0, evaluator.getPointCount(), accumulator);
+        return accumulator.getAvg();
+    }
+}
@@ -0,0 +1,180 @@
+package com.lucaf.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent cache of the results of the computations, bounded by an estimate of the memory of its entries
+ * <p>
+ * The entries expire after a time to live and are evicted in LRU order when the memory budget is exceeded. Expired
+ * entries are removed when they are looked up or when they reach the least recently used end of the cache.
+ */
+public class ResultCache {
+
+    /**
+     * Estimated memory of an entry without the characters of its key: map node, key and value objects, and the
+     * header and length of the characters array
+     */
+    private static final long ENTRY_OVERHEAD = 128;
+
+    /**
+     * Cached result with its expiration time
+     *
+     * @param value    result of the computation
+     * @param expireAt system time in milliseconds after which the result is expired
+     */
+    private record Entry(double value, long expireAt) {
+    }
+
+    /**
+     * Entries from the least to the most recently used
+     */
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Lock of the entries
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Maximum estimated memory of the entries in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Time to live of the entries in milliseconds
+     */
+    private final long timeToLive;
+
+    /**
+     * Estimated memory of the entries in bytes
+     */
+    private long bytes = 0;
+
+    /**
+     * Number of lookups that did not find a valid result
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Number of entries evicted because of the memory budget or expired
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor of the cache
+     *
+     * @param maxBytes   maximum estimated memory of the entries in bytes
+     * @param timeToLive time to live of the entries in milliseconds
+     * @throws IllegalArgumentException if the memory budget or the time to live are not positive
+     */
+    public ResultCache(long maxBytes, long timeToLive) throws IllegalArgumentException {
+        if (maxBytes <= 0 || timeToLive <= 0) {
+            throw new IllegalArgumentException("The memory budget and the time to live must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Get the estimated memory of an entry
+     *
+     * @param key key of the entry
+     * @return memory in bytes
+     */
+    private static long weight(String key) {
+        return ENTRY_OVERHEAD + 2L * key.length();
+    }
+
+    /**
+     * Get the result of a key
+     *
+     * @param key canonical key of the request
+     * @return result of the request, null if it is not in the cache or it is expired
+     */
+    public Double get(String key) {
+        Double value = null;
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.expireAt() < System.currentTimeMillis()) {
+                    remove(key);
+                } else {
+                    value = entry.value();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (value == null) {
+            misses.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Store the result of a key, evicting the least recently used entries over the memory budget
+     * A key larger than the whole budget is not stored
+     *
+     * @param key   canonical key of the request
+     * @param value result of the request
+     */
+    public void put(String key, double value) {
+        long weight = weight(key);
+        if (weight > maxBytes) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (entries.put(key, new Entry(value, now + timeToLive)) == null) {
+                bytes += weight;
+            }
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Entry> eldest = iterator.next();
+                if (bytes <= maxBytes && eldest.getValue().expireAt() >= now) {
+                    break;
+                }
+                iterator.remove();
+                bytes -= weight(eldest.getKey());
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove an expired entry
+     *
+     * @param key key of the entry, the lock must be held
+     */
+    private void remove(String key) {
+        entries.remove(key);
+        bytes -= weight(key);
+        evictions.increment();
+    }
+
+    /**
+     * Get the number of lookups that did not find a valid result
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of entries evicted because of the memory budget or expired
+     *
+     * @return number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
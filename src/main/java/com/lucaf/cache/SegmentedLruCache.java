@@ -0,0 +1,268 @@
+package com.lucaf.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Concurrent cache with a bounded number of entries, evicted with a segmented LRU policy
+ * <p>
+ * The keys are spread over independent stripes, each one guarded by its own lock. Every stripe keeps two LRU
+ * segments: new entries enter the probation segment and are promoted to the protected segment when they are read
+ * again, so a burst of keys used once can only evict other keys used once. When the protected segment is full its
+ * least recently used entry goes back to probation, and the least recently used entry of probation is evicted.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values, which must be immutable since they are shared between threads
+ */
+public class SegmentedLruCache<K, V> {
+
+    /**
+     * Number of stripes
+     */
+    private static final int STRIPES = 16;
+
+    /**
+     * Share of the capacity of a stripe reserved to the protected segment
+     */
+    private static final double PROTECTED_SHARE = 0.8;
+
+    /**
+     * Stripes of the cache
+     */
+    private final Stripe<K, V>[] stripes;
+
+    /**
+     * Number of lookups that found the key
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of lookups that did not find the key
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Number of entries evicted
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Segments of a stripe with their lock
+     *
+     * @param <K> type of the keys
+     * @param <V> type of the values
+     */
+    private static class Stripe<K, V> {
+
+        /**
+         * Lock of the stripe
+         */
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Entries read at most once, from the least to the most recently used
+         */
+        final LinkedHashMap<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * Entries read more than once, from the least to the most recently used
+         */
+        final LinkedHashMap<K, V> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+
+        /**
+         * Maximum number of entries of the stripe
+         */
+        final int capacity;
+
+        /**
+         * Maximum number of entries of the protected segment
+         */
+        final int protectedCapacity;
+
+        /**
+         * Constructor of the stripe
+         *
+         * @param capacity maximum number of entries of the stripe
+         */
+        Stripe(int capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = Math.max(1, (int) (capacity * PROTECTED_SHARE));
+        }
+    }
+
+    /**
+     * Constructor of the cache
+     *
+     * @param capacity maximum number of entries
+     * @throws IllegalArgumentException if the capacity is not positive
+     */
+    @SuppressWarnings("unchecked")
+    public SegmentedLruCache(int capacity) throws IllegalArgumentException {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity must be positive");
+        }
+        int stripeCount = Math.min(STRIPES, capacity);
+        stripes = (Stripe<K, V>[]) new Stripe<?, ?>[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe<>(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+        }
+    }
+
+    /**
+     * Get the stripe of a key
+     *
+     * @param key key to look up
+     * @return stripe holding the key
+     */
+    private Stripe<K, V> stripe(K key) {
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return stripes[Math.floorMod(hash, stripes.length)];
+    }
+
+    /**
+     * Get the value of a key, promoting it to the protected segment
+     *
+     * @param key key to look up
+     * @return value of the key, null if it is not in the cache
+     */
+    public V get(K key) {
+        Stripe<K, V> stripe = stripe(key);
+        V value;
+        stripe.lock.lock();
+        try {
+            value = stripe.protectedSegment.get(key);
+            if (value == null) {
+                value = stripe.probation.remove(key);
+                if (value != null) {
+                    stripe.protectedSegment.put(key, value);
+                    demote(stripe);
+                }
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Add or replace the value of a key
+     *
+     * @param key   key of the value
+     * @param value value to store
+     */
+    public void put(K key, V value) {
+        Stripe<K, V> stripe = stripe(key);
+        stripe.lock.lock();
+        try {
+            if (stripe.protectedSegment.containsKey(key)) {
+                stripe.protectedSegment.put(key, value);
+                return;
+            }
+            stripe.probation.put(key, value);
+            evict(stripe);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Get the value of a key, computing and storing it if it is not in the cache
+     * The value is computed outside the locks, so two threads missing the same key at the same time can both compute it
+     *
+     * @param key    key to look up
+     * @param loader function computing the value of the key, its exceptions are thrown to the caller
+     * @return value of the key
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Move the least recently used entries of a full protected segment back to probation
+     *
+     * @param stripe stripe to check, its lock must be held
+     */
+    private void demote(Stripe<K, V> stripe) {
+        Iterator<Map.Entry<K, V>> iterator = stripe.protectedSegment.entrySet().iterator();
+        while (stripe.protectedSegment.size() > stripe.protectedCapacity) {
+            Map.Entry<K, V> eldest = iterator.next();
+            iterator.remove();
+            stripe.probation.put(eldest.getKey(), eldest.getValue());
+        }
+        evict(stripe);
+    }
+
+    /**
+     * Evict the least recently used entries of probation while the stripe is over capacity
+     *
+     * @param stripe stripe to check, its lock must be held
+     */
+    private void evict(Stripe<K, V> stripe) {
+        Iterator<K> iterator = stripe.probation.keySet().iterator();
+        while (stripe.probation.size() + stripe.protectedSegment.size() > stripe.capacity && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Get the number of lookups that found the key
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of lookups that did not find the key
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of entries evicted
+     *
+     * @return number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Get the number of entries in the cache
+     *
+     * @return number of entries
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                size += stripe.probation.size() + stripe.protectedSegment.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,74 @@
+package com.lucaf.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Deduplication of identical tasks running at the same time
+ * <p>
+ * The first task submitted with a key runs on the executor, the tasks submitted with the same key before it completes
+ * are not run and receive its future, so they get the same result or the same exception. The key is forgotten when
+ * the task completes, so a later submission runs again.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the results, which must not be modified since they are shared between the callers
+ */
+public class SingleFlight<K, V> {
+
+    /**
+     * Futures of the tasks running, by key
+     */
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Number of tasks not run because an identical task was running
+     */
+    private final LongAdder saved = new LongAdder();
+
+    /**
+     * Run a task on an executor, unless a task with the same key is already running
+     *
+     * @param key      key identifying the result of the task
+     * @param task     task to run
+     * @param executor executor running the task
+     * @return future of the result of the task, or of the task with the same key already running
+     * @throws RejectedExecutionException if the executor does not accept the task
+     */
+    public CompletableFuture<V> submit(K key, Callable<V> task, Executor executor) throws RejectedExecutionException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, future);
+        if (running != null) {
+            saved.increment();
+            return running;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(task.call());
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    inFlight.remove(key, future);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        return future;
+    }
+
+    /**
+     * Get the number of tasks not run because an identical task was running
+     *
+     * @return number of tasks saved
+     */
+    public long getSaved() {
+        return saved.sum();
+    }
+}
@@ -0,0 +1,178 @@
+package com.lucaf.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Concurrent cache of the partial results of the tiles of a space of points, bounded by an estimate of the memory of
+ * its entries and evicted in LRU order
+ * <p>
+ * A tile is identified by a prefix, which describes the space of points and what is computed on it, and by its index
+ * in that space. The characters of the prefix are counted for each tile, even if the tiles of a request share it.
+ *
+ * @param <V> type of the partial results, which must not be modified since they are shared between threads
+ */
+public class TileCache<V> {
+
+    /**
+     * Estimated memory of an entry without its value and the characters of its prefix: map node, key object, and the
+     * header and length of the characters array
+     */
+    private static final long ENTRY_OVERHEAD = 112;
+
+    /**
+     * Key of a tile
+     *
+     * @param prefix description of the space of points and of what is computed on it
+     * @param tile   index of the tile in the space of points
+     */
+    private record TileKey(String prefix, long tile) {
+    }
+
+    /**
+     * Entries from the least to the most recently used
+     */
+    private final LinkedHashMap<TileKey, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Lock of the entries
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Maximum estimated memory of the entries in bytes
+     */
+    private final long maxBytes;
+
+    /**
+     * Estimated memory of a value in bytes
+     */
+    private final long valueBytes;
+
+    /**
+     * Estimated memory of the entries in bytes
+     */
+    private long bytes = 0;
+
+    /**
+     * Number of tiles found in the cache
+     */
+    private final LongAdder hits = new LongAdder();
+
+    /**
+     * Number of tiles not found in the cache
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Number of tiles evicted
+     */
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructor of the cache
+     *
+     * @param maxBytes   maximum estimated memory of the entries in bytes
+     * @param valueBytes estimated memory of a value in bytes
+     * @throws IllegalArgumentException if the memory budget is not positive
+     */
+    public TileCache(long maxBytes, long valueBytes) throws IllegalArgumentException {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive");
+        }
+        this.maxBytes = maxBytes;
+        this.valueBytes = valueBytes;
+    }
+
+    /**
+     * Get the estimated memory of an entry
+     *
+     * @param key key of the entry
+     * @return memory in bytes
+     */
+    private long weight(TileKey key) {
+        return ENTRY_OVERHEAD + valueBytes + 2L * key.prefix().length();
+    }
+
+    /**
+     * Get the partial result of a tile
+     *
+     * @param prefix description of the space of points and of what is computed on it
+     * @param tile   index of the tile
+     * @return partial result of the tile, null if it is not in the cache
+     */
+    public V get(String prefix, long tile) {
+        V value;
+        lock.lock();
+        try {
+            value = entries.get(new TileKey(prefix, tile));
+        } finally {
+            lock.unlock();
+        }
+        if (value == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Store the partial result of a tile, evicting the least recently used tiles over the memory budget
+     *
+     * @param prefix description of the space of points and of what is computed on it
+     * @param tile   index of the tile
+     * @param value  partial result of the tile
+     */
+    public void put(String prefix, long tile, V value) {
+        TileKey key = new TileKey(prefix, tile);
+        long weight = weight(key);
+        if (weight > maxBytes) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (entries.put(key, value) == null) {
+                bytes += weight;
+            }
+            Iterator<TileKey> iterator = entries.keySet().iterator();
+            while (bytes > maxBytes) {
+                TileKey eldest = iterator.next();
+                iterator.remove();
+                bytes -= weight(eldest);
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of tiles found in the cache
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Get the number of tiles not found in the cache
+     *
+     * @return number of misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Get the number of tiles evicted
+     *
+     * @return number of evictions
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+}
@@ -141,6 +141,16 @@ public class ComputeRequest extends Request {
         }
     }
 
+    /**
+     * Characters allowed in an expression besides the variables
+     */
+    private static final String EXPRESSION_SYMBOLS = "0123456789+-*/^().";
+
+    /**
+     * Pattern of a valid variable value function string
+     */
+    private static final Pattern VARIABLE_VALUE_FUNCTION = Pattern.compile("[a-z][a-z0-9]*(:[0-9\\-]+(\\.[0-9]+)?){3}");
+
     /**
      * List of expressions to compute
      */
@@ -220,6 +230,30 @@ public class ComputeRequest extends Request {
         return errorMessage;
     }
 
+    /**
+     * Get a key identifying the result of the request
+     * Two requests have the same key if they have the same computation kind, values kind, variable ranges and
+     * expressions, whatever the format of their numbers and the spaces of their expressions
+     *
+     * @return canonical key of the request
+     */
+    public String getCanonicalKey() {
+        StringBuilder key = new StringBuilder();
+        key.append(computationKind).append('_').append(valueKind).append(';');
+        for (VariableValuesFunction variableValuesFunction : variableValuesFunctions) {
+            key.append(variableValuesFunction.getVariable()).append(':')
+                    .append(variableValuesFunction.getLower()).append(':')
+                    .append(variableValuesFunction.getStep()).append(':')
+                    .append(variableValuesFunction.getUpper()).append(',');
+        }
+        if (expressions != null) {
+            for (String expression : expressions) {
+                key.append(';').append(expression);
+            }
+        }
+        return key.toString();
+    }
+
     /**
      * Constructor for ComputeRequest
      *
@@ -237,22 +271,30 @@ public class ComputeRequest extends Request {
     /**
      * Check if the item is a valid expression
      * The expression must contain only numbers, operators, and variables set in the variableValuesFunctions
+     * The positions reachable by a sequence of such tokens are marked from left to right, instead of matching a regular
+     * expression whose recursion grows with the length of the item and can overflow the stack
      *
      * @param item item to check
      * @return true if the item is a valid expression
      */
     private boolean isExpression(String item) {
-        String regexStart = "(";
-        String regexEnd = "[0-9+\\-*\\/^().])*";
-        StringBuilder regex = new StringBuilder();
-        regex.append(regexStart);
-        for (VariableValuesFunction variableValuesFunction : variableValuesFunctions) {
-            regex.append(variableValuesFunction.getVariable());
-            regex.append("|");
+        boolean[] reachable = new boolean[item.length() + 1];
+        reachable[0] = true;
+        for (int i = 0; i < item.length(); i++) {
+            if (!reachable[i]) {
+                continue;
+            }
+            if (EXPRESSION_SYMBOLS.indexOf(item.charAt(i)) >= 0) {
+                reachable[i + 1] = true;
+            }
+            for (VariableValuesFunction variableValuesFunction : variableValuesFunctions) {
+                String variable = variableValuesFunction.getVariable();
+                if (item.startsWith(variable, i)) {
+                    reachable[i + variable.length()] = true;
+                }
+            }
         }
-        regex.append(regexEnd);
-        Pattern pattern = Pattern.compile(regex.toString());
-        return pattern.matcher(item).matches();
+        return reachable[item.length()];
     }
 
     /**
@@ -263,9 +305,7 @@ public class ComputeRequest extends Request {
      * @return true if the item is a valid variable value function string
      */
     private boolean isVariableValueFunction(String item) {
-        String regex = "[a-z][a-z0-9]*(:[0-9\\-]+(\\.[0-9]+)?){3}";
-        Pattern pattern = Pattern.compile(regex);
-        return pattern.matcher(item).matches();
+        return VARIABLE_VALUE_FUNCTION.matcher(item).matches();
     }
 
     /**
@@ -310,7 +350,7 @@ public class ComputeRequest extends Request {
                 errorMessage = "(InvalidStep) Invalid Step";
                 return;
             }
-            if (doubleValues[0] > doubleValues[2]) {
+            if (doubleValues[0] > doubleValues[2] || !Double.isFinite(doubleValues[0]) || !Double.isFinite(doubleValues[2] + doubleValues[1])) {
                 errorMessage = "(InvalidRange) Invalid Range";
                 return;
             }
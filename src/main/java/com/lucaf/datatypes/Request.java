@@ -16,9 +16,9 @@ public class Request {
         QuitRequest(new String[]{"BYE"}),
 
         /**
-         * StatRequest: STAT_REQS, STAT_AVG_TIME, STAT_MAX_TIME
+         * StatRequest: STAT_REQS, STAT_AVG_TIME, STAT_MAX_TIME, STAT_P50_TIME, STAT_P90_TIME, STAT_P99_TIME, STAT_P999_TIME, STAT_CACHE_HITS, STAT_CACHE_MISSES, STAT_CACHE_EVICTIONS, STAT_RESULT_CACHE_HITS, STAT_RESULT_CACHE_MISSES, STAT_RESULT_CACHE_EVICTIONS, STAT_TILE_CACHE_HITS, STAT_TILE_CACHE_MISSES, STAT_TILE_CACHE_EVICTIONS, STAT_SAVED_COMPUTATIONS, STAT_REJECTED_REQS, STAT_QUEUE_WAIT, STAT_MAX_QUEUE_WAIT, STAT_PARSED_NODES, STAT_OPTIMIZED_NODES
          */
-        StatRequest(new String[]{"STAT_REQS", "STAT_AVG_TIME", "STAT_MAX_TIME"}),
+        StatRequest(new String[]{"STAT_REQS", "STAT_AVG_TIME", "STAT_MAX_TIME", "STAT_P50_TIME", "STAT_P90_TIME", "STAT_P99_TIME", "STAT_P999_TIME", "STAT_CACHE_HITS", "STAT_CACHE_MISSES", "STAT_CACHE_EVICTIONS", "STAT_RESULT_CACHE_HITS", "STAT_RESULT_CACHE_MISSES", "STAT_RESULT_CACHE_EVICTIONS", "STAT_TILE_CACHE_HITS", "STAT_TILE_CACHE_MISSES", "STAT_TILE_CACHE_EVICTIONS", "STAT_SAVED_COMPUTATIONS", "STAT_REJECTED_REQS", "STAT_QUEUE_WAIT", "STAT_MAX_QUEUE_WAIT", "STAT_PARSED_NODES", "STAT_OPTIMIZED_NODES"}),
 
         /**
          * ComputationRequest: MIN_GRID, MAX_GRID, AVG_GRID, COUNT_GRID, MIN_LIST, MAX_LIST, COUNT_LIST, AVG_LIST
@@ -20,10 +20,15 @@ public class Response {
     private final String ERRORCODE = "ERR";
 
     /**
-     * Time of the computation
+     * Time of the computation in nanoseconds
      */
     private long time = 0;
 
+    /**
+     * True if the result was taken from the result cache instead of being computed
+     */
+    private boolean cacheHit = false;
+
     /**
      * Status of the response (true if OK, false if ERROR)
      */
@@ -68,11 +73,10 @@ public class Response {
     }
 
     /**
-     * Set the time of the computation in ms
-     * The time is formatted as a string with 3 decimal digits
-     * The time is in seconds
+     * Set the time of the computation in nanoseconds
+     * The time is formatted as a string in seconds with 3 decimal digits
      *
-     * @param time time in microseconds of the computation
+     * @param time time in nanoseconds of the computation
      */
     public void setTime(long time) {
         this.time = time;
@@ -81,12 +85,30 @@ public class Response {
     /**
      * Method to get the time of the computation
      *
-     * @return time of the computation in ms
+     * @return time of the computation in nanoseconds
      */
     public long getTime() {
         return time;
     }
 
+    /**
+     * Set if the result was taken from the result cache
+     *
+     * @param cacheHit true if the result was not computed
+     */
+    public void setCacheHit(boolean cacheHit) {
+        this.cacheHit = cacheHit;
+    }
+
+    /**
+     * Method to get if the result was taken from the result cache
+     *
+     * @return true if the result was not computed
+     */
+    public boolean isCacheHit() {
+        return cacheHit;
+    }
+
     /**
      * Method to get if the response is OK
      *
@@ -108,7 +130,7 @@ public class Response {
             stringBuilder.append(OKCODE);
             stringBuilder.append(";");
             NumberFormat formatter = new DecimalFormat("#0.000");
-            String timeString = formatter.format(time / 1000.0).replace(",", ".");
+            String timeString = formatter.format(time / 1e9).replace(",", ".");
             stringBuilder.append(timeString);
         } else {
             stringBuilder.append(ERRORCODE);
@@ -24,6 +24,101 @@ public class StatRequest extends Request{
          * STAT_MAX_TIME: Maximum time for the calculations
          */
         MAX_TIME,
+
+        /**
+         * STAT_P50_TIME: Median time for the calculations
+         */
+        P50_TIME,
+
+        /**
+         * STAT_P90_TIME: Time within which 90% of the calculations completed
+         */
+        P90_TIME,
+
+        /**
+         * STAT_P99_TIME: Time within which 99% of the calculations completed
+         */
+        P99_TIME,
+
+        /**
+         * STAT_P999_TIME: Time within which 99.9% of the calculations completed
+         */
+        P999_TIME,
+
+        /**
+         * STAT_CACHE_HITS: Number of expressions found in the cache of the parsed expressions
+         */
+        CACHE_HITS,
+
+        /**
+         * STAT_CACHE_MISSES: Number of expressions parsed because they were not in the cache
+         */
+        CACHE_MISSES,
+
+        /**
+         * STAT_CACHE_EVICTIONS: Number of expressions evicted from the cache
+         */
+        CACHE_EVICTIONS,
+
+        /**
+         * STAT_RESULT_CACHE_HITS: Number of requests answered from the cache of the results
+         */
+        RESULT_CACHE_HITS,
+
+        /**
+         * STAT_RESULT_CACHE_MISSES: Number of requests not found in the cache of the results, or found expired
+         */
+        RESULT_CACHE_MISSES,
+
+        /**
+         * STAT_RESULT_CACHE_EVICTIONS: Number of results evicted from the cache because of the memory budget or expired
+         */
+        RESULT_CACHE_EVICTIONS,
+
+        /**
+         * STAT_TILE_CACHE_HITS: Number of tiles found in the cache of the tiles
+         */
+        TILE_CACHE_HITS,
+
+        /**
+         * STAT_TILE_CACHE_MISSES: Number of tiles computed because they were not in the cache of the tiles
+         */
+        TILE_CACHE_MISSES,
+
+        /**
+         * STAT_TILE_CACHE_EVICTIONS: Number of tiles evicted from the cache because of the memory budget
+         */
+        TILE_CACHE_EVICTIONS,
+
+        /**
+         * STAT_SAVED_COMPUTATIONS: Number of requests answered with the result of an identical request running at the same time
+         */
+        SAVED_COMPUTATIONS,
+
+        /**
+         * STAT_REJECTED_REQS: Number of computation requests rejected because they were too large or the server was busy
+         */
+        REJECTED_REQS,
+
+        /**
+         * STAT_QUEUE_WAIT: Average time the requests of the client waited in the queue of the scheduler
+         */
+        QUEUE_WAIT,
+
+        /**
+         * STAT_MAX_QUEUE_WAIT: Maximum time a request of the client waited in the queue of the scheduler
+         */
+        MAX_QUEUE_WAIT,
+
+        /**
+         * STAT_PARSED_NODES: Number of nodes of the expressions of the computed requests before the optimization
+         */
+        PARSED_NODES,
+
+        /**
+         * STAT_OPTIMIZED_NODES: Number of nodes of the expressions of the computed requests after the optimization
+         */
+        OPTIMIZED_NODES,
     }
 
     /**
@@ -0,0 +1,145 @@
+package com.lucaf.evaluator;
+
+/**
+ * Class to aggregate the results of the expressions without storing them
+ * Each result has a weight, which is the number of points of the request sharing the same result.
+ * The sum uses Kahan compensated summation, like {@link java.util.stream.DoubleStream#average()}
+ */
+public class Accumulator {
+
+    /**
+     * Minimum of the results
+     */
+    private double min = Double.POSITIVE_INFINITY;
+
+    /**
+     * Maximum of the results
+     */
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Weighted sum of the results
+     */
+    private double sum = 0;
+
+    /**
+     * Compensation of the rounding errors of the sum, to be subtracted from it
+     */
+    private double compensation = 0;
+
+    /**
+     * Plain sum of the results, used when the compensated sum is NaN because of infinite values
+     */
+    private double simpleSum = 0;
+
+    /**
+     * Total weight of the results
+     */
+    private long count = 0;
+
+    /**
+     * Create an accumulator from aggregates computed elsewhere
+     *
+     * @param min   minimum of the results
+     * @param max   maximum of the results
+     * @param avg   average of the results
+     * @param count total weight of the results
+     * @return accumulator with the aggregates
+     */
+    static Accumulator of(double min, double max, double avg, long count) {
+        Accumulator accumulator = new Accumulator();
+        accumulator.min = min;
+        accumulator.max = max;
+        accumulator.sum = avg * count;
+        accumulator.simpleSum = accumulator.sum;
+        accumulator.count = count;
+        return accumulator;
+    }
+
+    /**
+     * Add a result, NaN and infinite results are ignored
+     *
+     * @param value  result to add
+     * @param weight number of points with this result
+     */
+    public void add(double value, long weight) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return;
+        }
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        double weighted = value * weight;
+        addToSum(weighted);
+        simpleSum += weighted;
+        count += weight;
+    }
+
+    /**
+     * Add a value to the compensated sum
+     *
+     * @param value value to add
+     */
+    private void addToSum(double value) {
+        double corrected = value - compensation;
+        double total = sum + corrected;
+        compensation = (total - sum) - corrected;
+        sum = total;
+    }
+
+    /**
+     * Merge the results of another accumulator into this one
+     *
+     * @param other accumulator to merge
+     */
+    public void merge(Accumulator other) {
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+        addToSum(other.sum);
+        addToSum(-other.compensation);
+        simpleSum += other.simpleSum;
+        count += other.count;
+    }
+
+    /**
+     * Get the minimum of the results
+     *
+     * @return minimum, 0 if there are no results
+     */
+    public double getMin() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Get the maximum of the results
+     *
+     * @return maximum, 0 if there are no results
+     */
+    public double getMax() {
+        return count == 0 ? 0 : max;
+    }
+
+    /**
+     * Get the average of the results
+     *
+     * @return average, 0 if there are no results
+     */
+    public double getAvg() {
+        if (count == 0) {
+            return 0;
+        }
+        double finalSum = sum - compensation;
+        if (Double.isNaN(finalSum) && Double.isInfinite(simpleSum)) {
+            finalSum = simpleSum;
+        }
+        return finalSum / count;
+    }
+
+    /**
+     * Get the total weight of the results
+     *
+     * @return number of results
+     */
+    public long getCount() {
+        return count;
+    }
+}
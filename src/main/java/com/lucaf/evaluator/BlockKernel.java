@@ -0,0 +1,43 @@
+package com.lucaf.evaluator;
+
+/**
+ * Interface of an executable range of instructions of a {@link Program} running over a block of points at once
+ * <p>
+ * The registers are stored as structure of arrays: every register has a buffer holding its value for each point of
+ * the block, as created by {@link Program#newBuffers(int)}.
+ */
+public interface BlockKernel {
+
+    /**
+     * Maximum number of points of a block
+     */
+    int BLOCK_SIZE = 256;
+
+    /**
+     * True if the jdk.incubator.vector module is available, the server must be started with
+     * --add-modules jdk.incubator.vector to use it
+     */
+    boolean VECTOR_AVAILABLE = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    /**
+     * Run the instructions on the first points of the buffers
+     *
+     * @param buffers register buffers of the program
+     * @param length  number of points to run, at most the length of the buffers
+     */
+    void run(double[][] buffers, int length);
+
+    /**
+     * Create a kernel running the instructions with the Vector API
+     *
+     * @param program program to run
+     * @param from    first instruction to run, the following ones are run up to the end of the program
+     * @return the kernel, null if the Vector API is not available
+     */
+    static BlockKernel vectorized(Program program, int from) {
+        if (!VECTOR_AVAILABLE) {
+            return null;
+        }
+        return new VectorBlockKernel(program, from);
+    }
+}
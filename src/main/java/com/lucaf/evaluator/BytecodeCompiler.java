@@ -0,0 +1,555 @@
+package com.lucaf.evaluator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class to translate a {@link Program} into a JVM class implementing {@link CompiledExpression} or {@link Kernel}
+ * <p>
+ * The class is defined as a hidden class, so it can be unloaded as soon as the expression is not used anymore.
+ * Every register of the program becomes a local variable of the generated method, which lets the JIT
+ * inline and register-allocate the whole formula. The generated code has no branches, the infinite to NaN
+ * conversion is delegated to {@link Program#finite(double)}.
+ */
+public class BytecodeCompiler {
+
+    /**
+     * Maximum size of the bytecode of a method
+     */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * Name of the generated classes, must be in the package of this class
+     */
+    private static final String CLASS_NAME = "com/lucaf/evaluator/GeneratedExpression";
+
+    /**
+     * Lookup used to define the hidden classes
+     */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Compile a program into a generated class
+     *
+     * @param program program to compile
+     * @return compiled expression, stateless and thread-safe
+     * @throws IllegalArgumentException if the program is too large for a single method
+     */
+    public static CompiledExpression compile(Program program) throws IllegalArgumentException {
+        return (CompiledExpression) define(generate(program));
+    }
+
+    /**
+     * Compile the instructions of a program starting from a given one into a generated class
+     * The operands computed before the first instruction are read from the register file
+     *
+     * @param program program to compile
+     * @param from    first instruction to compile
+     * @return kernel running the instructions from the given one to the end, stateless and thread-safe
+     * @throws IllegalArgumentException if the program is too large for a single method
+     */
+    public static Kernel compileKernel(Program program, int from) throws IllegalArgumentException {
+        return (Kernel) define(generateKernel(program, from));
+    }
+
+    /**
+     * Define a generated class as a hidden class and create its instance
+     *
+     * @param bytes bytes of the class file
+     * @return instance of the class
+     */
+    private static Object define(byte[] bytes) {
+        try {
+            Class<?> hidden = LOOKUP.defineHiddenClass(bytes, true).lookupClass();
+            return hidden.getConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to define the generated expression", e);
+        }
+    }
+
+    /**
+     * Generate the class file of a program
+     *
+     * @param program program to compile
+     * @return bytes of the class file
+     * @throws IllegalArgumentException if the program is too large for a single method
+     */
+    static byte[] generate(Program program) throws IllegalArgumentException {
+        ConstantPool pool = new ConstantPool();
+        int finite = pool.methodRef(pool.classRef("com/lucaf/evaluator/Program"), "finite", "(D)D");
+        int pow = pool.methodRef(pool.classRef("java/lang/Math"), "pow", "(DD)D");
+        byte[] evalCode = generateEval(program, pool, finite, pow, false);
+        byte[] evalAllCode = generateEval(program, pool, finite, pow, true);
+        int maxLocals = local(program.getRegisterCount());
+        return writeClass(pool, "com/lucaf/evaluator/CompiledExpression", maxLocals,
+                new String[]{"eval", "([D)D", "eval", "([D[D)V"}, new byte[][]{evalCode, evalAllCode});
+    }
+
+    /**
+     * Generate the class file of a kernel
+     *
+     * @param program program to compile
+     * @param from    first instruction to compile
+     * @return bytes of the class file
+     * @throws IllegalArgumentException if the program is too large for a single method
+     */
+    static byte[] generateKernel(Program program, int from) throws IllegalArgumentException {
+        ConstantPool pool = new ConstantPool();
+        int finite = pool.methodRef(pool.classRef("com/lucaf/evaluator/Program"), "finite", "(D)D");
+        int pow = pool.methodRef(pool.classRef("java/lang/Math"), "pow", "(DD)D");
+        byte[] runCode = generateRun(program, from, pool, finite, pow);
+        int maxLocals = local(program.getRegisterCount());
+        return writeClass(pool, "com/lucaf/evaluator/Kernel", maxLocals,
+                new String[]{"run", "([D)V"}, new byte[][]{runCode});
+    }
+
+    /**
+     * Write a final class with a public constructor implementing an interface
+     *
+     * @param pool          constant pool of the class
+     * @param interfaceName internal name of the implemented interface
+     * @param maxLocals     number of local variable slots of the methods
+     * @param signatures    name and descriptor of each method
+     * @param codes         bytecode of each method
+     * @return bytes of the class file
+     * @throws IllegalArgumentException if a method is too large
+     */
+    private static byte[] writeClass(ConstantPool pool, String interfaceName, int maxLocals, String[] signatures, byte[][] codes) throws IllegalArgumentException {
+        int thisClass = pool.classRef(CLASS_NAME);
+        int objectClass = pool.classRef("java/lang/Object");
+        int interfaceClass = pool.classRef(interfaceName);
+        int objectInit = pool.methodRef(objectClass, "<init>", "()V");
+        int initName = pool.utf8("<init>");
+        int initType = pool.utf8("()V");
+        int codeName = pool.utf8("Code");
+        int[] names = new int[codes.length];
+        int[] types = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            names[i] = pool.utf8(signatures[2 * i]);
+            types[i] = pool.utf8(signatures[2 * i + 1]);
+            if (codes[i].length > MAX_CODE_LENGTH) {
+                throw new IllegalArgumentException("The program is too large to be compiled");
+            }
+        }
+        if (maxLocals > 0xFFFF) {
+            throw new IllegalArgumentException("The program is too large to be compiled");
+        }
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(61);
+            pool.write(out);
+            out.writeShort(0x0001 | 0x0010 | 0x0020);
+            out.writeShort(thisClass);
+            out.writeShort(objectClass);
+            out.writeShort(1);
+            out.writeShort(interfaceClass);
+            out.writeShort(0);
+            out.writeShort(1 + codes.length);
+
+            out.writeShort(0x0001);
+            out.writeShort(initName);
+            out.writeShort(initType);
+            out.writeShort(1);
+            writeCode(out, codeName, 1, 1, new byte[]{
+                    0x2a,
+                    (byte) 0xb7, (byte) (objectInit >> 8), (byte) objectInit,
+                    (byte) 0xb1
+            });
+
+            for (int i = 0; i < codes.length; i++) {
+                out.writeShort(0x0001 | 0x0010);
+                out.writeShort(names[i]);
+                out.writeShort(types[i]);
+                out.writeShort(1);
+                writeCode(out, codeName, 4, maxLocals, codes[i]);
+            }
+
+            out.writeShort(0);
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Generate the bytecode of a kernel run method
+     * Locals: 0 this, 1 the register file, then two slots for each register of the program
+     *
+     * @param program program to compile
+     * @param from    first instruction to compile
+     * @param pool    constant pool of the class
+     * @param finite  method reference of {@link Program#finite(double)}
+     * @param pow     method reference of {@link Math#pow(double, double)}
+     * @return bytecode of the method
+     */
+    private static byte[] generateRun(Program program, int from, ConstantPool pool, int finite, int pow) {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        int variables = program.getVariableCount();
+        int[] constants = new int[program.getConstantCount()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = pool.doubleConst(program.getConstant(i));
+        }
+        int base = variables + constants.length;
+        if (program.getRegisterCount() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("The program is too large to be compiled");
+        }
+        for (int i = from; i < program.getInstructionCount(); i++) {
+            loadRegister(code, program.getLeft(i), base + from, variables, constants);
+            loadRegister(code, program.getRight(i), base + from, variables, constants);
+            operator(code, program.getOpcode(i), pow);
+            invokeStatic(code, finite);
+            localInstruction(code, 0x39, local(base + i));
+            code.write(0x2b);
+            pushInt(code, base + i);
+            localInstruction(code, 0x18, local(base + i));
+            code.write(0x52);
+        }
+        code.write(0xb1);
+        return code.toByteArray();
+    }
+
+    /**
+     * Push the value of a register on the operand stack, reading it from the register file if it is computed outside the kernel
+     *
+     * @param code      bytecode of the method
+     * @param register  register to load
+     * @param first     first register computed by the kernel
+     * @param variables number of variables of the program
+     * @param constants constant pool indexes of the constants
+     */
+    private static void loadRegister(ByteArrayOutputStream code, int register, int first, int variables, int[] constants) {
+        if (register >= first || (register >= variables && register < variables + constants.length)) {
+            load(code, register, variables, constants);
+        } else {
+            code.write(0x2b);
+            pushInt(code, register);
+            code.write(0x31);
+        }
+    }
+
+    /**
+     * Write the instruction of an operator
+     *
+     * @param code   bytecode of the method
+     * @param opcode opcode of the operator
+     * @param pow    method reference of {@link Math#pow(double, double)}
+     */
+    private static void operator(ByteArrayOutputStream code, byte opcode, int pow) {
+        switch (opcode) {
+            case Program.ADD:
+                code.write(0x63);
+                break;
+            case Program.SUB:
+                code.write(0x67);
+                break;
+            case Program.MUL:
+                code.write(0x6b);
+                break;
+            case Program.DIV:
+                code.write(0x6f);
+                break;
+            case Program.POW:
+                invokeStatic(code, pow);
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Generate the bytecode of an eval method
+     * Locals: 0 this, 1 the variables array, 2 the results array, then two slots for each register of the program
+     *
+     * @param program    program to compile
+     * @param pool       constant pool of the class
+     * @param finite     method reference of {@link Program#finite(double)}
+     * @param pow        method reference of {@link Math#pow(double, double)}
+     * @param allOutputs true to store all the outputs in the results array, false to return the first one
+     * @return bytecode of the method
+     */
+    private static byte[] generateEval(Program program, ConstantPool pool, int finite, int pow, boolean allOutputs) {
+        ByteArrayOutputStream code = new ByteArrayOutputStream();
+        int variables = program.getVariableCount();
+        for (int i = 0; i < variables; i++) {
+            code.write(0x2b);
+            pushInt(code, i);
+            code.write(0x31);
+            localInstruction(code, 0x39, local(i));
+        }
+        int[] constants = new int[program.getConstantCount()];
+        for (int i = 0; i < constants.length; i++) {
+            constants[i] = pool.doubleConst(program.getConstant(i));
+        }
+        int base = variables + constants.length;
+        for (int i = 0; i < program.getInstructionCount(); i++) {
+            load(code, program.getLeft(i), variables, constants);
+            load(code, program.getRight(i), variables, constants);
+            operator(code, program.getOpcode(i), pow);
+            invokeStatic(code, finite);
+            localInstruction(code, 0x39, local(base + i));
+        }
+        if (allOutputs) {
+            for (int i = 0; i < program.getOutputCount(); i++) {
+                code.write(0x2c);
+                pushInt(code, i);
+                load(code, program.getOutputRegister(i), variables, constants);
+                code.write(0x52);
+            }
+            code.write(0xb1);
+        } else {
+            load(code, program.getOutputRegister(0), variables, constants);
+            code.write(0xaf);
+        }
+        return code.toByteArray();
+    }
+
+    /**
+     * Get the local variable of a register
+     *
+     * @param register register of the program
+     * @return index of the local variable
+     */
+    private static int local(int register) {
+        return 3 + 2 * register;
+    }
+
+    /**
+     * Push the value of a register on the operand stack
+     *
+     * @param code      bytecode of the method
+     * @param register  register to load
+     * @param variables number of variables of the program
+     * @param constants constant pool indexes of the constants
+     */
+    private static void load(ByteArrayOutputStream code, int register, int variables, int[] constants) {
+        if (register >= variables && register < variables + constants.length) {
+            int index = constants[register - variables];
+            code.write(0x14);
+            code.write(index >> 8);
+            code.write(index);
+        } else {
+            localInstruction(code, 0x18, local(register));
+        }
+    }
+
+    /**
+     * Write a dload or dstore instruction, using the wide form when needed
+     *
+     * @param code   bytecode of the method
+     * @param opcode opcode of the instruction
+     * @param local  index of the local variable
+     */
+    private static void localInstruction(ByteArrayOutputStream code, int opcode, int local) {
+        if (local > 0xFF) {
+            code.write(0xc4);
+            code.write(opcode);
+            code.write(local >> 8);
+            code.write(local);
+        } else {
+            code.write(opcode);
+            code.write(local);
+        }
+    }
+
+    /**
+     * Write an invokestatic instruction
+     *
+     * @param code   bytecode of the method
+     * @param method constant pool index of the method
+     */
+    private static void invokeStatic(ByteArrayOutputStream code, int method) {
+        code.write(0xb8);
+        code.write(method >> 8);
+        code.write(method);
+    }
+
+    /**
+     * Push an int constant on the operand stack
+     *
+     * @param code  bytecode of the method
+     * @param value value to push
+     */
+    private static void pushInt(ByteArrayOutputStream code, int value) {
+        if (value <= 5) {
+            code.write(0x03 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.write(0x10);
+            code.write(value);
+        } else {
+            code.write(0x11);
+            code.write(value >> 8);
+            code.write(value);
+        }
+    }
+
+    /**
+     * Write a method Code attribute
+     *
+     * @param out       class file stream
+     * @param codeName  constant pool index of "Code"
+     * @param maxStack  maximum depth of the operand stack
+     * @param maxLocals number of local variable slots
+     * @param code      bytecode of the method
+     * @throws IOException if the stream fails
+     */
+    private static void writeCode(DataOutputStream out, int codeName, int maxStack, int maxLocals, byte[] code) throws IOException {
+        out.writeShort(codeName);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Constant pool of the generated class
+     */
+    private static class ConstantPool {
+
+        /**
+         * Serialized entries
+         */
+        private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+
+        /**
+         * Stream over the entries
+         */
+        private final DataOutputStream out = new DataOutputStream(entries);
+
+        /**
+         * Index of the already written entries
+         */
+        private final Map<String, Integer> indexes = new HashMap<>();
+
+        /**
+         * Next free index, the pool starts from 1
+         */
+        private int next = 1;
+
+        /**
+         * Add an entry if it is not in the pool yet
+         *
+         * @param key   unique key of the entry
+         * @param tag   tag of the entry
+         * @param slots number of pool slots used by the entry
+         * @param body  body of the entry
+         * @return index of the entry
+         */
+        private int add(String key, int tag, int slots, byte[] body) {
+            Integer index = indexes.get(key);
+            if (index != null) {
+                return index;
+            }
+            if (next + slots > 0xFFFF) {
+                throw new IllegalArgumentException("The program is too large to be compiled");
+            }
+            try {
+                out.writeByte(tag);
+                out.write(body);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            index = next;
+            next += slots;
+            indexes.put(key, index);
+            return index;
+        }
+
+        /**
+         * Add an UTF-8 entry
+         *
+         * @param value string value
+         * @return index of the entry
+         */
+        int utf8(String value) {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            try {
+                new DataOutputStream(body).writeUTF(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return add("U" + value, 1, 1, body.toByteArray());
+        }
+
+        /**
+         * Add a class entry
+         *
+         * @param name internal name of the class
+         * @return index of the entry
+         */
+        int classRef(String name) {
+            return add("C" + name, 7, 1, u2(utf8(name)));
+        }
+
+        /**
+         * Add a method reference entry
+         *
+         * @param owner      index of the owner class entry
+         * @param name       name of the method
+         * @param descriptor descriptor of the method
+         * @return index of the entry
+         */
+        int methodRef(int owner, String name, String descriptor) {
+            int nameAndType = add("N" + name + descriptor, 12, 1, u2u2(utf8(name), utf8(descriptor)));
+            return add("M" + owner + "." + nameAndType, 10, 1, u2u2(owner, nameAndType));
+        }
+
+        /**
+         * Add a double entry, it uses two slots of the pool
+         *
+         * @param value double value
+         * @return index of the entry
+         */
+        int doubleConst(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            byte[] body = new byte[8];
+            for (int i = 0; i < 8; i++) {
+                body[i] = (byte) (bits >> (56 - 8 * i));
+            }
+            return add("D" + bits, 6, 2, body);
+        }
+
+        /**
+         * Encode an unsigned short
+         *
+         * @param value value to encode
+         * @return two bytes
+         */
+        private static byte[] u2(int value) {
+            return new byte[]{(byte) (value >> 8), (byte) value};
+        }
+
+        /**
+         * Encode two unsigned shorts
+         *
+         * @param first  first value
+         * @param second second value
+         * @return four bytes
+         */
+        private static byte[] u2u2(int first, int second) {
+            return new byte[]{(byte) (first >> 8), (byte) first, (byte) (second >> 8), (byte) second};
+        }
+
+        /**
+         * Write the count and the entries of the pool
+         *
+         * @param stream class file stream
+         * @throws IOException if the stream fails
+         */
+        void write(DataOutputStream stream) throws IOException {
+            stream.writeShort(next);
+            stream.write(entries.toByteArray());
+        }
+    }
+}
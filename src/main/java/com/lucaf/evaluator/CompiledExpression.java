@@ -0,0 +1,23 @@
+package com.lucaf.evaluator;
+
+/**
+ * Interface of an executable form of a {@link Program}
+ */
+public interface CompiledExpression {
+
+    /**
+     * Evaluate the first expression
+     *
+     * @param vars values of the variables in slot order
+     * @return result of the expression
+     */
+    double eval(double[] vars);
+
+    /**
+     * Evaluate all the expressions, sharing their common subterms
+     *
+     * @param vars    values of the variables in slot order
+     * @param results array filled with the result of each expression
+     */
+    void eval(double[] vars, double[] results);
+}
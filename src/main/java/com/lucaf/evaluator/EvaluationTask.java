@@ -0,0 +1,118 @@
+package com.lucaf.evaluator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Task to evaluate a range of points, split in halves until the ranges are not larger than a threshold
+ * <p>
+ * The ranges are always split and merged in the same way, left half first, whether the halves run in parallel or not,
+ * so the aggregated result does not depend on the number of threads.
+ */
+public class EvaluationTask extends RecursiveTask<Accumulator> {
+
+    /**
+     * Version of the serialized form, the tasks are never serialized
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Evaluator of the points, not serializable
+     */
+    private final transient Evaluator evaluator;
+
+    /**
+     * First point of the range
+     */
+    private final long from;
+
+    /**
+     * Last point of the range (excluded)
+     */
+    private final long to;
+
+    /**
+     * Maximum number of points evaluated by a single task
+     */
+    private final long threshold;
+
+    /**
+     * True to run the halves in parallel
+     */
+    private final boolean parallel;
+
+    /**
+     * Constructor of the task
+     *
+     * @param evaluator evaluator of the points
+     * @param from      first point of the range
+     * @param to        last point of the range (excluded)
+     * @param threshold maximum number of points evaluated by a single task
+     * @param parallel  true to run the halves in parallel
+     */
+    private EvaluationTask(Evaluator evaluator, long from, long to, long threshold, boolean parallel) {
+        this.evaluator = evaluator;
+        this.from = from;
+        this.to = to;
+        this.threshold = Math.max(threshold, 1);
+        this.parallel = parallel;
+    }
+
+    /**
+     * Evaluate all the points of an evaluator
+     *
+     * @param evaluator evaluator of the points
+     * @param threshold maximum number of points evaluated by a single task
+     * @param pool      pool running the tasks, null to run them on the current thread
+     * @return aggregate of the results
+     */
+    public static Accumulator evaluate(Evaluator evaluator, long threshold, ForkJoinPool pool) {
+        return evaluate(evaluator, 0, evaluator.getPointCount(), threshold, pool);
+    }
+
+    /**
+     * Evaluate a range of points of an evaluator
+     *
+     * @param evaluator evaluator of the points
+     * @param from      first point of the range
+     * @param to        last point of the range (excluded)
+     * @param threshold maximum number of points evaluated by a single task
+     * @param pool      pool running the tasks, null to run them on the current thread
+     * @return aggregate of the results
+     */
+    public static Accumulator evaluate(Evaluator evaluator, long from, long to, long threshold, ForkJoinPool pool) {
+        if (pool == null || to - from <= threshold) {
+            return new EvaluationTask(evaluator, from, to, threshold, false).compute();
+        }
+        return pool.invoke(new EvaluationTask(evaluator, from, to, threshold, true));
+    }
+
+    /**
+     * Evaluate the range, splitting it if it is larger than the threshold
+     *
+     * @return aggregate of the results of the range
+     */
+    @Override
+    protected Accumulator compute() {
+        if (to - from <= threshold) {
+            Accumulator accumulator = new Accumulator();
+            evaluator.evaluate(from, to, accumulator);
+            return accumulator;
+        }
+        long middle = from + (to - from) / 2;
+        EvaluationTask left = new EvaluationTask(evaluator, from, middle, threshold, parallel);
+        EvaluationTask right = new EvaluationTask(evaluator, middle, to, threshold, parallel);
+        Accumulator leftResult;
+        Accumulator rightResult;
+        if (parallel) {
+            left.fork();
+            rightResult = right.compute();
+            leftResult = left.join();
+        } else {
+            leftResult = left.compute();
+            rightResult = right.compute();
+        }
+        leftResult.merge(rightResult);
+        return leftResult;
+    }
+}
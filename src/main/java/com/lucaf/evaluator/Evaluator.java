@@ -0,0 +1,35 @@
+package com.lucaf.evaluator;
+
+/**
+ * Interface of an evaluator of a {@link Program} over an indexed space of points
+ */
+public interface Evaluator {
+
+    /**
+     * Compile the program into generated classes, if the program is too large it keeps being interpreted
+     */
+    void compile();
+
+    /**
+     * Compile the program into a kernel evaluating blocks of points with the Vector API
+     *
+     * @return false if the program can not be vectorized, it keeps being evaluated as before
+     */
+    boolean vectorize();
+
+    /**
+     * Get the number of points to evaluate
+     *
+     * @return number of points
+     */
+    long getPointCount();
+
+    /**
+     * Evaluate the program over a range of points, in index order
+     *
+     * @param from        first point
+     * @param to          last point (excluded)
+     * @param accumulator accumulator of the results of all the expressions
+     */
+    void evaluate(long from, long to, Accumulator accumulator);
+}
@@ -0,0 +1,22 @@
+package com.lucaf.evaluator;
+
+/**
+ * Exception thrown by the {@link Parser} when a valid expression is nested deeper than the optimizer and the compilers
+ * can walk recursively within the stack of a worker
+ */
+public class ExpressionTooDeepException extends IllegalArgumentException {
+
+    /**
+     * Version of the serialized form
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Constructor to set the message
+     *
+     * @param message description of the limit exceeded
+     */
+    public ExpressionTooDeepException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,431 @@
+package com.lucaf.evaluator;
+
+import java.util.Arrays;
+
+/**
+ * Class to evaluate a {@link Program} over a cartesian grid of values, with the last variable varying fastest
+ * <p>
+ * The instructions are sorted by level, the level of an instruction being the innermost grid dimension it depends on.
+ * When the grid advances, only the instructions of the dimensions that changed are run again, the results of the
+ * outer levels stay in the register file. The dimensions not referenced by the program are not enumerated: every
+ * result stands for all their combinations, which are counted as the weight of the result.
+ */
+public class GridEvaluator implements Evaluator {
+
+    /**
+     * Minimum size of the innermost dimension for evaluating the grid in blocks of points
+     */
+    private static final int MIN_BLOCK_SIZE = 32;
+
+    /**
+     * Program with the instructions sorted by level
+     */
+    private final Program program;
+
+    /**
+     * Variable slot of each enumerated dimension
+     */
+    private final int[] slots;
+
+    /**
+     * Lower bound of each enumerated dimension
+     */
+    private final double[] lowers;
+
+    /**
+     * Step of each enumerated dimension
+     */
+    private final double[] steps;
+
+    /**
+     * Size of each enumerated dimension
+     */
+    private final int[] sizes;
+
+    /**
+     * First instruction of each level, with one more element holding the number of instructions
+     */
+    private final int[] levelStarts;
+
+    /**
+     * Number of grid points represented by each enumerated point
+     */
+    private final long weight;
+
+    /**
+     * Compiled instructions of the innermost level, null to interpret them
+     */
+    private Kernel innerKernel = null;
+
+    /**
+     * Vectorized instructions of the innermost level, null to evaluate one point at a time
+     */
+    private BlockKernel blockKernel = null;
+
+    /**
+     * Constructor of the evaluator
+     *
+     * @param program program to evaluate, its variables are the grid dimensions in order
+     * @param lowers  lower bound of each dimension
+     * @param steps   step of each dimension
+     * @param sizes   number of values of each dimension
+     * @throws ArithmeticException if the number of points overflows a long
+     */
+    public GridEvaluator(Program program, double[] lowers, double[] steps, int[] sizes) throws ArithmeticException {
+        int variables = program.getVariableCount();
+        int base = variables + program.getConstantCount();
+        boolean[] referenced = new boolean[variables];
+        for (int i = 0; i < program.getInstructionCount(); i++) {
+            if (program.getLeft(i) < variables) {
+                referenced[program.getLeft(i)] = true;
+            }
+            if (program.getRight(i) < variables) {
+                referenced[program.getRight(i)] = true;
+            }
+        }
+        for (int i = 0; i < program.getOutputCount(); i++) {
+            if (program.getOutputRegister(i) < variables) {
+                referenced[program.getOutputRegister(i)] = true;
+            }
+        }
+
+        int dimensions = 0;
+        long collapsed = 1;
+        int[] levelOfSlot = new int[variables];
+        for (int i = 0; i < variables; i++) {
+            if (referenced[i]) {
+                levelOfSlot[i] = dimensions++;
+            } else {
+                collapsed = Math.multiplyExact(collapsed, sizes[i]);
+            }
+        }
+        this.weight = collapsed;
+        this.slots = new int[dimensions];
+        this.lowers = new double[dimensions];
+        this.steps = new double[dimensions];
+        this.sizes = new int[dimensions];
+        for (int i = 0, d = 0; i < variables; i++) {
+            if (referenced[i]) {
+                slots[d] = i;
+                this.lowers[d] = lowers[i];
+                this.steps[d] = steps[i];
+                this.sizes[d] = sizes[i];
+                d++;
+            }
+        }
+
+        int instructions = program.getInstructionCount();
+        int[] levels = new int[instructions];
+        int[] counts = new int[Math.max(dimensions, 1) + 1];
+        for (int i = 0; i < instructions; i++) {
+            levels[i] = Math.max(level(program.getLeft(i), variables, base, levelOfSlot, levels),
+                    level(program.getRight(i), variables, base, levelOfSlot, levels));
+            counts[levels[i] + 1]++;
+        }
+        levelStarts = new int[Math.max(dimensions, 1) + 1];
+        for (int l = 1; l < levelStarts.length; l++) {
+            levelStarts[l] = levelStarts[l - 1] + counts[l];
+        }
+        int[] next = levelStarts.clone();
+        int[] order = new int[instructions];
+        for (int i = 0; i < instructions; i++) {
+            order[next[levels[i]]++] = i;
+        }
+        this.program = program.reorder(order);
+    }
+
+    /**
+     * Get the level of a register
+     *
+     * @param register    register to check
+     * @param variables   number of variables of the program
+     * @param base        first register of the instructions
+     * @param levelOfSlot level of each variable slot
+     * @param levels      level of the instructions already visited
+     * @return level of the register, constants are at level 0
+     */
+    private static int level(int register, int variables, int base, int[] levelOfSlot, int[] levels) {
+        if (register < variables) {
+            return levelOfSlot[register];
+        }
+        if (register < base) {
+            return 0;
+        }
+        return levels[register - base];
+    }
+
+    /**
+     * Compile the instructions of the innermost level into a generated class
+     * If the program is too large the instructions keep being interpreted
+     */
+    @Override
+    public void compile() {
+        try {
+            innerKernel = BytecodeCompiler.compileKernel(program, levelStarts[levelStarts.length - 2]);
+        } catch (IllegalArgumentException e) {
+            innerKernel = null;
+        }
+    }
+
+    /**
+     * Compile the instructions of the innermost level into a kernel evaluating blocks of points of the innermost
+     * dimension with the Vector API
+     *
+     * @return false if the Vector API is not available or the innermost dimension is too small
+     */
+    @Override
+    public boolean vectorize() {
+        if (sizes.length == 0 || sizes[sizes.length - 1] < MIN_BLOCK_SIZE) {
+            return false;
+        }
+        blockKernel = BlockKernel.vectorized(program, levelStarts[levelStarts.length - 2]);
+        return blockKernel != null;
+    }
+
+    /**
+     * Get the number of grid points represented by each enumerated point
+     *
+     * @return weight of each result
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * Get the variable slot of the outermost enumerated dimension, the points are grouped in consecutive rows sharing
+     * its value
+     *
+     * @return slot of the variable, -1 if no variable is enumerated
+     */
+    public int getOuterSlot() {
+        return slots.length == 0 ? -1 : slots[0];
+    }
+
+    /**
+     * Get the program with the instructions sorted by level
+     *
+     * @return program evaluated on the grid
+     */
+    Program getProgram() {
+        return program;
+    }
+
+    /**
+     * Get the number of enumerated dimensions
+     *
+     * @return number of dimensions
+     */
+    int getDimensionCount() {
+        return sizes.length;
+    }
+
+    /**
+     * Get the variable slot of an enumerated dimension
+     *
+     * @param dimension index of the dimension
+     * @return slot of the variable
+     */
+    int getSlot(int dimension) {
+        return slots[dimension];
+    }
+
+    /**
+     * Get the size of an enumerated dimension
+     *
+     * @param dimension index of the dimension
+     * @return number of values of the dimension
+     */
+    int getSize(int dimension) {
+        return sizes[dimension];
+    }
+
+    /**
+     * Get a value of an enumerated dimension, computed like during the evaluation
+     *
+     * @param dimension index of the dimension
+     * @param index     index of the value
+     * @return value of the variable
+     */
+    double getValue(int dimension, int index) {
+        return lowers[dimension] + index * steps[dimension];
+    }
+
+    /**
+     * Get the number of enumerated points, the points are indexed in row-major order
+     *
+     * @return number of points
+     * @throws ArithmeticException if the number of points overflows a long
+     */
+    @Override
+    public long getPointCount() throws ArithmeticException {
+        long count = 1;
+        for (int size : sizes) {
+            count = Math.multiplyExact(count, size);
+        }
+        return count;
+    }
+
+    /**
+     * Evaluate the program over a range of points in row-major order
+     *
+     * @param from        first point
+     * @param to          last point (excluded)
+     * @param accumulator accumulator of the results of all the expressions
+     */
+    @Override
+    public void evaluate(long from, long to, Accumulator accumulator) {
+        if (blockKernel != null) {
+            evaluateBlocks(from, to, accumulator);
+            return;
+        }
+        int dimensions = sizes.length;
+        int[] indexes = new int[dimensions];
+        long rest = from;
+        for (int d = dimensions - 1; d >= 0; d--) {
+            indexes[d] = (int) (rest % sizes[d]);
+            rest /= sizes[d];
+        }
+        double[] registers = program.newRegisters();
+        int outputs = program.getOutputCount();
+        int changed = 0;
+        for (long point = from; point < to; point++) {
+            for (int d = changed; d < dimensions; d++) {
+                registers[slots[d]] = lowers[d] + indexes[d] * steps[d];
+            }
+            run(registers, changed);
+            for (int i = 0; i < outputs; i++) {
+                accumulator.add(program.getOutput(registers, i), weight);
+            }
+            changed = dimensions - 1;
+            while (changed > 0 && ++indexes[changed] == sizes[changed]) {
+                indexes[changed] = 0;
+                changed--;
+            }
+            if (changed == 0) {
+                indexes[0]++;
+            }
+        }
+    }
+
+    /**
+     * Evaluate the program over a range of points in row-major order, a block of points of the innermost dimension
+     * at a time
+     * The outer levels are run one point at a time and their registers are copied to all the points of the buffers,
+     * the results are added in the same order of the point by point evaluation
+     *
+     * @param from        first point
+     * @param to          last point (excluded)
+     * @param accumulator accumulator of the results of all the expressions
+     */
+    private void evaluateBlocks(long from, long to, Accumulator accumulator) {
+        int last = sizes.length - 1;
+        int[] indexes = new int[sizes.length];
+        long rest = from;
+        for (int d = last; d >= 0; d--) {
+            indexes[d] = (int) (rest % sizes[d]);
+            rest /= sizes[d];
+        }
+        int blockSize = Math.min(BlockKernel.BLOCK_SIZE, sizes[last]);
+        double[] registers = program.newRegisters();
+        double[][] buffers = program.newBuffers(blockSize);
+        int base = program.getVariableCount() + program.getConstantCount();
+        int outputs = program.getOutputCount();
+        int changed = 0;
+        long point = from;
+        while (point < to) {
+            if (changed < last) {
+                for (int d = changed; d < last; d++) {
+                    registers[slots[d]] = lowers[d] + indexes[d] * steps[d];
+                    Arrays.fill(buffers[slots[d]], registers[slots[d]]);
+                }
+                program.run(registers, levelStarts[changed], levelStarts[last]);
+                for (int i = levelStarts[changed]; i < levelStarts[last]; i++) {
+                    Arrays.fill(buffers[base + i], registers[base + i]);
+                }
+            }
+            int start = indexes[last];
+            int length = (int) Math.min(Math.min(blockSize, sizes[last] - start), to - point);
+            double[] buffer = buffers[slots[last]];
+            for (int i = 0; i < length; i++) {
+                buffer[i] = lowers[last] + (start + i) * steps[last];
+            }
+            blockKernel.run(buffers, length);
+            for (int i = 0; i < length; i++) {
+                for (int k = 0; k < outputs; k++) {
+                    accumulator.add(buffers[program.getOutputRegister(k)][i], weight);
+                }
+            }
+            point += length;
+            indexes[last] += length;
+            changed = last;
+            if (indexes[last] == sizes[last]) {
+                indexes[last] = 0;
+                changed--;
+                while (changed > 0 && ++indexes[changed] == sizes[changed]) {
+                    indexes[changed] = 0;
+                    changed--;
+                }
+                if (changed == 0) {
+                    indexes[0]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Evaluate the program over a box of the grid
+     *
+     * @param from        first index of each enumerated dimension
+     * @param to          last index of each enumerated dimension (excluded)
+     * @param accumulator accumulator of the results of all the expressions
+     */
+    public void evaluate(int[] from, int[] to, Accumulator accumulator) {
+        int dimensions = sizes.length;
+        for (int d = 0; d < dimensions; d++) {
+            if (from[d] >= to[d]) {
+                return;
+            }
+        }
+        double[] registers = program.newRegisters();
+        int[] indexes = from.clone();
+        int outputs = program.getOutputCount();
+        int changed = 0;
+        while (true) {
+            for (int d = changed; d < dimensions; d++) {
+                registers[slots[d]] = lowers[d] + indexes[d] * steps[d];
+            }
+            run(registers, changed);
+            for (int i = 0; i < outputs; i++) {
+                accumulator.add(program.getOutput(registers, i), weight);
+            }
+            changed = dimensions - 1;
+            while (changed >= 0) {
+                indexes[changed]++;
+                if (indexes[changed] < to[changed]) {
+                    break;
+                }
+                indexes[changed] = from[changed];
+                changed--;
+            }
+            if (changed < 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Run the instructions from a level to the end
+     *
+     * @param registers register file
+     * @param level     first level to run
+     */
+    private void run(double[] registers, int level) {
+        int inner = levelStarts.length - 2;
+        if (innerKernel == null) {
+            program.run(registers, levelStarts[level], levelStarts[levelStarts.length - 1]);
+        } else {
+            program.run(registers, levelStarts[level], levelStarts[inner]);
+            innerKernel.run(registers);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.lucaf.evaluator;
+
+/**
+ * Closed interval of doubles bounding all the values a register can take that are neither NaN nor infinite
+ * <p>
+ * The operators of {@link Program} replace every infinite result with NaN, and NaN results are ignored by the
+ * aggregations, so an interval only needs to bound the finite results: it is always within
+ * [-{@link Double#MAX_VALUE}, {@link Double#MAX_VALUE}], and it is empty when every result is NaN.
+ * The bounds of the operators are computed on the corners of the operands. +, -, * and / are correctly rounded and
+ * the rounding is monotone, so the rounded corners already bound every rounded result; the bounds of ^ are widened
+ * by a few ulps, without crossing zero, since {@link Math#pow(double, double)} is only within 1 ulp of the exact
+ * result but never changes its sign.
+ */
+final class Interval {
+
+    /**
+     * Interval of a register that is always NaN
+     */
+    static final Interval EMPTY = new Interval(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY);
+
+    /**
+     * Interval of a register that can take any finite value
+     */
+    static final Interval ALL = new Interval(-Double.MAX_VALUE, Double.MAX_VALUE);
+
+    /**
+     * Ulps added to the bounds of +, -, * and /, which are correctly rounded
+     */
+    private static final int ARITHMETIC_ULPS = 0;
+
+    /**
+     * Ulps added to the bounds of ^, since {@link Math#pow(double, double)} is only within 1 ulp of the exact result
+     */
+    private static final int POW_ULPS = 4;
+
+    /**
+     * Lower bound
+     */
+    final double lower;
+
+    /**
+     * Upper bound
+     */
+    final double upper;
+
+    /**
+     * Constructor of the interval
+     *
+     * @param lower lower bound
+     * @param upper upper bound
+     */
+    private Interval(double lower, double upper) {
+        this.lower = lower;
+        this.upper = upper;
+    }
+
+    /**
+     * Create the interval of a constant
+     * An infinite constant is bounded by the whole range, since operators like 1/x can turn it into a finite value
+     *
+     * @param value value of the constant
+     * @return interval holding only the value
+     */
+    static Interval of(double value) {
+        if (Double.isNaN(value)) {
+            return EMPTY;
+        }
+        if (Double.isInfinite(value)) {
+            return ALL;
+        }
+        return new Interval(value, value);
+    }
+
+    /**
+     * Create the exact interval between two values
+     *
+     * @param lower lower bound
+     * @param upper upper bound
+     * @return interval between the bounds
+     */
+    static Interval of(double lower, double upper) {
+        return new Interval(lower, upper);
+    }
+
+    /**
+     * Create an interval widened by some ulps and limited to the finite values
+     * A bound is not widened across zero, so the sign of the results is kept
+     * @param lower lower bound
+     * @param upper upper bound
+     * @param ulps  ulps to add on each side
+     * @return interval holding the bounds
+     */
+    private static Interval widened(double lower, double upper, int ulps) {
+        if (Double.isNaN(lower) || Double.isNaN(upper)) {
+            return ALL;
+        }
+        for (int i = 0; i < ulps; i++) {
+            lower = lower == 0 ? lower : Math.nextDown(lower);
+            upper = upper == 0 ? upper : Math.nextUp(upper);
+        }
+        if (lower > Double.MAX_VALUE || upper < -Double.MAX_VALUE) {
+            return EMPTY;
+        }
+        return new Interval(Math.max(lower, -Double.MAX_VALUE), Math.min(upper, Double.MAX_VALUE));
+    }
+
+    /**
+     * Check if the interval has no values
+     *
+     * @return true if the register is always NaN
+     */
+    boolean isEmpty() {
+        return lower > upper;
+    }
+
+    /**
+     * Check if the interval holds a value
+     *
+     * @param value value to check
+     * @return true if the value is between the bounds
+     */
+    boolean contains(double value) {
+        return lower <= value && value <= upper;
+    }
+
+    /**
+     * Create the smallest interval holding this interval and another one
+     *
+     * @param other other interval
+     * @return union of the intervals
+     */
+    Interval union(Interval other) {
+        if (isEmpty()) {
+            return other;
+        }
+        if (other.isEmpty()) {
+            return this;
+        }
+        return new Interval(Math.min(lower, other.lower), Math.max(upper, other.upper));
+    }
+
+    /**
+     * Apply an operator to two intervals, the interval version of {@link Program#apply(byte, double, double)}
+     *
+     * @param opcode operator to apply
+     * @param a      interval of the left operand
+     * @param b      interval of the right operand
+     * @return interval of the result
+     */
+    static Interval apply(byte opcode, Interval a, Interval b) {
+        if (opcode == Program.POW) {
+            return pow(a, b);
+        }
+        if (a.isEmpty() || b.isEmpty()) {
+            return EMPTY;
+        }
+        switch (opcode) {
+            case Program.ADD:
+                return widened(a.lower + b.lower, a.upper + b.upper, ARITHMETIC_ULPS);
+            case Program.SUB:
+                return widened(a.lower - b.upper, a.upper - b.lower, ARITHMETIC_ULPS);
+            case Program.MUL:
+                return corners(a.lower * b.lower, a.lower * b.upper, a.upper * b.lower, a.upper * b.upper, ARITHMETIC_ULPS);
+            case Program.DIV:
+                if (b.lower > 0 || b.upper < 0) {
+                    return corners(a.lower / b.lower, a.lower / b.upper, a.upper / b.lower, a.upper / b.upper, ARITHMETIC_ULPS);
+                }
+                if (b.lower == 0 && b.upper == 0) {
+                    return EMPTY;
+                }
+                return ALL;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Create the interval holding four values
+     *
+     * @param a    first value
+     * @param b    second value
+     * @param c    third value
+     * @param d    fourth value
+     * @param ulps ulps to add on each side
+     * @return interval between the smallest and the largest value
+     */
+    private static Interval corners(double a, double b, double c, double d, int ulps) {
+        return widened(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)), ulps);
+    }
+
+    /**
+     * Interval version of {@link Math#pow(double, double)}
+     * x^0 is 1 even when x is NaN, so a zero exponent always adds 1 to the result
+     *
+     * @param a interval of the base
+     * @param b interval of the exponent
+     * @return interval of the result
+     */
+    private static Interval pow(Interval a, Interval b) {
+        if (b.isEmpty()) {
+            return EMPTY;
+        }
+        Interval one = b.contains(0) ? new Interval(1, 1) : EMPTY;
+        if (a.isEmpty()) {
+            return one;
+        }
+        if (b.lower == b.upper && b.lower == Math.rint(b.lower)) {
+            return integerPow(a, b.lower).union(one);
+        }
+        if (a.lower >= 0) {
+            return positivePow(a.lower, a.upper, b).union(one);
+        }
+        double magnitude = Math.max(-a.lower, a.upper);
+        double smallest = a.upper < 0 ? -a.upper : 0;
+        Interval bound = positivePow(smallest, magnitude, b);
+        return new Interval(-bound.upper, bound.upper).union(one);
+    }
+
+    /**
+     * Interval of a non-negative base raised to an exponent
+     * For a positive base the power is monotone in each operand, so the bounds are on the corners
+     *
+     * @param lower lower bound of the base, non-negative
+     * @param upper upper bound of the base
+     * @param b     interval of the exponent
+     * @return interval of the result
+     */
+    private static Interval positivePow(double lower, double upper, Interval b) {
+        if (lower > 0) {
+            return corners(Math.pow(lower, b.lower), Math.pow(lower, b.upper),
+                    Math.pow(upper, b.lower), Math.pow(upper, b.upper), POW_ULPS);
+        }
+        if (b.lower > 0) {
+            return widened(0, Math.max(Math.pow(upper, b.lower), Math.pow(upper, b.upper)), POW_ULPS);
+        }
+        return new Interval(0, Double.MAX_VALUE);
+    }
+
+    /**
+     * Interval of a base raised to a constant integer, which is defined also for negative bases
+     *
+     * @param a interval of the base
+     * @param k integer exponent
+     * @return interval of the result
+     */
+    private static Interval integerPow(Interval a, double k) {
+        if (k == 0) {
+            return new Interval(1, 1);
+        }
+        boolean containsZero = a.contains(0);
+        if (k % 2 == 0) {
+            double smallest = containsZero ? 0 : Math.min(Math.abs(a.lower), Math.abs(a.upper));
+            double largest = Math.max(Math.abs(a.lower), Math.abs(a.upper));
+            if (k > 0) {
+                return widened(Math.pow(smallest, k), Math.pow(largest, k), POW_ULPS);
+            }
+            if (containsZero) {
+                return new Interval(0, Double.MAX_VALUE);
+            }
+            return widened(Math.pow(largest, k), Math.pow(smallest, k), POW_ULPS);
+        }
+        if (k > 0) {
+            return widened(Math.pow(a.lower, k), Math.pow(a.upper, k), POW_ULPS);
+        }
+        if (containsZero) {
+            return ALL;
+        }
+        return widened(Math.pow(a.upper, k), Math.pow(a.lower, k), POW_ULPS);
+    }
+}
@@ -0,0 +1,395 @@
+package com.lucaf.evaluator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Class to find the minimum or the maximum of the expressions over a grid without evaluating every point
+ * <p>
+ * The grid is split in boxes, depth first, and the program is evaluated with {@link Interval} operands to bound the
+ * results of all the points of a box. A box whose bound can not reach the best result found so far is skipped, and
+ * the points of the small boxes left are evaluated one by one, so the result is the same of the full enumeration.
+ * <p>
+ * The small boxes are evaluated in batches, merged in the order they are found so the result does not depend on the
+ * number of threads. The first batch is a single box and every following one doubles, up to a chunk of points: when
+ * the bounds prune well the search ends after a few small batches, and when they do not the large batches are split
+ * across the threads of a pool like {@link EvaluationTask}, and the caller can run other work between the chunks.
+ */
+public class IntervalSearch {
+
+    /**
+     * Maximum number of points of a box evaluated point by point
+     */
+    private static final long LEAF_POINTS = 256;
+
+    /**
+     * Evaluator of the grid
+     */
+    private final GridEvaluator grid;
+
+    /**
+     * True to search the maximum, false to search the minimum
+     */
+    private final boolean maximum;
+
+    /**
+     * Maximum number of points evaluated by a single task of the pool
+     */
+    private final long threshold;
+
+    /**
+     * Pool evaluating the large batches of boxes, null to evaluate them on the current thread
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Maximum number of points of a batch, the points evaluated between two runs of {@link #betweenChunks}
+     */
+    private final long chunkPoints;
+
+    /**
+     * Task run after evaluating every chunk of points, null to run nothing
+     */
+    private final Runnable betweenChunks;
+
+    /**
+     * Number of points evaluated
+     */
+    private long evaluatedPoints = 0;
+
+    /**
+     * Box of the grid with the bound of its results
+     */
+    private static class Box {
+
+        /**
+         * First index of each dimension
+         */
+        final int[] from;
+
+        /**
+         * Last index of each dimension (excluded)
+         */
+        final int[] to;
+
+        /**
+         * Bound of the results of the points of the box
+         */
+        final Interval bound;
+
+        /**
+         * Constructor of the box
+         *
+         * @param from  first index of each dimension
+         * @param to    last index of each dimension (excluded)
+         * @param bound bound of the results
+         */
+        Box(int[] from, int[] to, Interval bound) {
+            this.from = from;
+            this.to = to;
+            this.bound = bound;
+        }
+
+        /**
+         * Get the number of points of the box
+         *
+         * @return number of points
+         */
+        long getPoints() {
+            long points = 1;
+            for (int d = 0; d < from.length; d++) {
+                points *= to[d] - from[d];
+            }
+            return points;
+        }
+    }
+
+    /**
+     * Task evaluating a range of a batch of boxes, split in halves until the ranges are not larger than a threshold
+     */
+    private static class BatchTask extends RecursiveTask<Accumulator> {
+
+        /**
+         * Version of the serialized form, the tasks are never serialized
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Evaluator of the grid, not serializable
+         */
+        private final transient GridEvaluator grid;
+
+        /**
+         * Boxes of the batch, not serializable
+         */
+        private final transient List<Box> boxes;
+
+        /**
+         * Number of points of the boxes of the batch before each box, and of the whole batch at the end
+         */
+        private final long[] offsets;
+
+        /**
+         * First box of the range
+         */
+        private final int from;
+
+        /**
+         * Last box of the range (excluded)
+         */
+        private final int to;
+
+        /**
+         * Maximum number of points evaluated by a single task
+         */
+        private final long threshold;
+
+        /**
+         * Constructor of the task
+         *
+         * @param grid      evaluator of the grid
+         * @param boxes     boxes of the batch
+         * @param offsets   number of points of the boxes before each box
+         * @param from      first box of the range
+         * @param to        last box of the range (excluded)
+         * @param threshold maximum number of points evaluated by a single task
+         */
+        BatchTask(GridEvaluator grid, List<Box> boxes, long[] offsets, int from, int to, long threshold) {
+            this.grid = grid;
+            this.boxes = boxes;
+            this.offsets = offsets;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        /**
+         * Evaluate the range of boxes, splitting it if it has more points than the threshold
+         *
+         * @return aggregate of the results of the range
+         */
+        @Override
+        protected Accumulator compute() {
+            if (to - from == 1 || offsets[to] - offsets[from] <= threshold) {
+                Accumulator accumulator = new Accumulator();
+                for (int i = from; i < to; i++) {
+                    grid.evaluate(boxes.get(i).from, boxes.get(i).to, accumulator);
+                }
+                return accumulator;
+            }
+            int middle = from + (to - from) / 2;
+            BatchTask left = new BatchTask(grid, boxes, offsets, from, middle, threshold);
+            BatchTask right = new BatchTask(grid, boxes, offsets, middle, to, threshold);
+            left.fork();
+            Accumulator rightResult = right.compute();
+            Accumulator leftResult = left.join();
+            leftResult.merge(rightResult);
+            return leftResult;
+        }
+    }
+
+    /**
+     * Constructor of the search
+     *
+     * @param grid          evaluator of the grid
+     * @param maximum       true to search the maximum, false to search the minimum
+     * @param threshold     maximum number of points evaluated by a single task of the pool
+     * @param pool          pool evaluating the large batches of boxes, null to evaluate them on the current thread
+     * @param chunkPoints   maximum number of points of a batch
+     * @param betweenChunks task run after evaluating every chunk of points, null to run nothing
+     */
+    public IntervalSearch(GridEvaluator grid, boolean maximum, long threshold, ForkJoinPool pool, long chunkPoints, Runnable betweenChunks) {
+        this.grid = grid;
+        this.maximum = maximum;
+        this.threshold = Math.max(threshold, 1);
+        this.pool = pool;
+        this.chunkPoints = Math.max(chunkPoints, LEAF_POINTS);
+        this.betweenChunks = betweenChunks;
+    }
+
+    /**
+     * Search the extreme of the results
+     *
+     * @return accumulator of the results of the evaluated points, its minimum or maximum is the one of the whole grid
+     */
+    public Accumulator search() {
+        Accumulator accumulator = new Accumulator();
+        int dimensions = grid.getDimensionCount();
+        int[] sizes = new int[dimensions];
+        for (int d = 0; d < dimensions; d++) {
+            sizes[d] = grid.getSize(d);
+        }
+        Deque<Box> stack = new ArrayDeque<>();
+        Box root = box(new int[dimensions], sizes);
+        if (!root.bound.isEmpty()) {
+            stack.push(root);
+        }
+        List<Box> batch = new ArrayList<>();
+        long batchPoints = 0;
+        long batchLimit = 1;
+        long chunkEvaluated = 0;
+        while (!stack.isEmpty() || !batch.isEmpty()) {
+            if (stack.isEmpty() || batchPoints >= batchLimit) {
+                evaluate(batch, accumulator);
+                evaluatedPoints += batchPoints;
+                chunkEvaluated += batchPoints;
+                batch.clear();
+                batchPoints = 0;
+                batchLimit = Math.min(batchLimit * 2, chunkPoints);
+                if (chunkEvaluated >= chunkPoints && betweenChunks != null) {
+                    betweenChunks.run();
+                    chunkEvaluated = 0;
+                }
+                continue;
+            }
+            Box box = stack.pop();
+            if (!mayImprove(box.bound, accumulator)) {
+                continue;
+            }
+            long points = box.getPoints();
+            int split = widest(box);
+            if (points <= LEAF_POINTS || split < 0) {
+                batch.add(box);
+                batchPoints += points;
+                continue;
+            }
+            int middle = box.from[split] + (box.to[split] - box.from[split]) / 2;
+            int[] firstTo = box.to.clone();
+            firstTo[split] = middle;
+            int[] secondFrom = box.from.clone();
+            secondFrom[split] = middle;
+            Box first = box(box.from, firstTo);
+            Box second = box(secondFrom, box.to);
+            if (isBetter(first.bound, second.bound)) {
+                push(stack, second, accumulator);
+                push(stack, first, accumulator);
+            } else {
+                push(stack, first, accumulator);
+                push(stack, second, accumulator);
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Evaluate a batch of boxes, in parallel if it has more points than the threshold
+     *
+     * @param batch       boxes to evaluate, in the order they were found
+     * @param accumulator accumulator of the results found so far
+     */
+    private void evaluate(List<Box> batch, Accumulator accumulator) {
+        long[] offsets = new long[batch.size() + 1];
+        for (int i = 0; i < batch.size(); i++) {
+            offsets[i + 1] = offsets[i] + batch.get(i).getPoints();
+        }
+        if (pool == null || offsets[batch.size()] <= threshold) {
+            for (Box box : batch) {
+                grid.evaluate(box.from, box.to, accumulator);
+            }
+            return;
+        }
+        accumulator.merge(pool.invoke(new BatchTask(grid, batch, offsets, 0, batch.size(), threshold)));
+    }
+
+    /**
+     * Get the number of points evaluated by the search
+     *
+     * @return number of points
+     */
+    public long getEvaluatedPoints() {
+        return evaluatedPoints;
+    }
+
+    /**
+     * Push a box on the stack if it can improve the result
+     *
+     * @param stack       stack of the boxes to visit
+     * @param box         box to push
+     * @param accumulator accumulator of the results found so far
+     */
+    private void push(Deque<Box> stack, Box box, Accumulator accumulator) {
+        if (!box.bound.isEmpty() && mayImprove(box.bound, accumulator)) {
+            stack.push(box);
+        }
+    }
+
+    /**
+     * Check if a bound can reach the best result found so far
+     * Equal bounds are kept, since -0 and +0 are equal but not the same result
+     *
+     * @param bound       bound of a box
+     * @param accumulator accumulator of the results found so far
+     * @return true if the box must be visited
+     */
+    private boolean mayImprove(Interval bound, Accumulator accumulator) {
+        if (accumulator.getCount() == 0) {
+            return true;
+        }
+        return maximum ? bound.upper >= accumulator.getMax() : bound.lower <= accumulator.getMin();
+    }
+
+    /**
+     * Check if a bound is more promising than another one
+     *
+     * @param first  first bound
+     * @param second second bound
+     * @return true if the first bound is more promising
+     */
+    private boolean isBetter(Interval first, Interval second) {
+        return maximum ? first.upper >= second.upper : first.lower <= second.lower;
+    }
+
+    /**
+     * Get the dimension with the most indexes in a box
+     *
+     * @param box box to split
+     * @return index of the dimension, -1 if the box is a single point
+     */
+    private static int widest(Box box) {
+        int widest = -1;
+        int width = 1;
+        for (int d = 0; d < box.from.length; d++) {
+            if (box.to[d] - box.from[d] > width) {
+                width = box.to[d] - box.from[d];
+                widest = d;
+            }
+        }
+        return widest;
+    }
+
+    /**
+     * Create a box and bound its results
+     *
+     * @param from first index of each dimension
+     * @param to   last index of each dimension (excluded)
+     * @return box with its bound
+     */
+    private Box box(int[] from, int[] to) {
+        Program program = grid.getProgram();
+        int variables = program.getVariableCount();
+        int base = variables + program.getConstantCount();
+        Interval[] registers = new Interval[program.getRegisterCount()];
+        for (int i = 0; i < variables; i++) {
+            registers[i] = Interval.ALL;
+        }
+        for (int d = 0; d < from.length; d++) {
+            registers[grid.getSlot(d)] = Interval.of(grid.getValue(d, from[d]), grid.getValue(d, to[d] - 1));
+        }
+        for (int i = 0; i < program.getConstantCount(); i++) {
+            registers[variables + i] = Interval.of(program.getConstant(i));
+        }
+        for (int i = 0; i < program.getInstructionCount(); i++) {
+            registers[base + i] = Interval.apply(program.getOpcode(i),
+                    registers[program.getLeft(i)], registers[program.getRight(i)]);
+        }
+        Interval bound = Interval.EMPTY;
+        for (int i = 0; i < program.getOutputCount(); i++) {
+            bound = bound.union(registers[program.getOutputRegister(i)]);
+        }
+        return new Box(from, to, bound);
+    }
+}
@@ -0,0 +1,14 @@
+package com.lucaf.evaluator;
+
+/**
+ * Interface of an executable range of instructions of a {@link Program}, working directly on its register file
+ */
+public interface Kernel {
+
+    /**
+     * Run the instructions, reading the operands from the register file and writing back the results
+     *
+     * @param registers register file of the program
+     */
+    void run(double[] registers);
+}
@@ -0,0 +1,145 @@
+package com.lucaf.evaluator;
+
+/**
+ * Class to evaluate a {@link Program} over a list of points, where all the variables advance together
+ * The points are generated on the fly, so the memory used does not depend on the number of points
+ */
+public class ListEvaluator implements Evaluator {
+
+    /**
+     * Program to evaluate
+     */
+    private final Program program;
+
+    /**
+     * Lower bound of each variable
+     */
+    private final double[] lowers;
+
+    /**
+     * Step of each variable
+     */
+    private final double[] steps;
+
+    /**
+     * Number of points
+     */
+    private final int size;
+
+    /**
+     * Compiled instructions of the program, null to interpret them
+     */
+    private Kernel kernel = null;
+
+    /**
+     * Vectorized instructions of the program, null to evaluate one point at a time
+     */
+    private BlockKernel blockKernel = null;
+
+    /**
+     * Constructor of the evaluator
+     *
+     * @param program program to evaluate, its variables are in the order of the bounds
+     * @param lowers  lower bound of each variable
+     * @param steps   step of each variable
+     * @param size    number of points
+     */
+    public ListEvaluator(Program program, double[] lowers, double[] steps, int size) {
+        this.program = program;
+        this.lowers = lowers;
+        this.steps = steps;
+        this.size = size;
+    }
+
+    /**
+     * Compile the program into a generated class
+     * If the program is too large the instructions keep being interpreted
+     */
+    @Override
+    public void compile() {
+        try {
+            kernel = BytecodeCompiler.compileKernel(program, 0);
+        } catch (IllegalArgumentException e) {
+            kernel = null;
+        }
+    }
+
+    /**
+     * Compile the program into a kernel evaluating blocks of points with the Vector API
+     *
+     * @return false if the Vector API is not available
+     */
+    @Override
+    public boolean vectorize() {
+        blockKernel = BlockKernel.vectorized(program, 0);
+        return blockKernel != null;
+    }
+
+    /**
+     * Get the number of points
+     *
+     * @return number of points
+     */
+    @Override
+    public long getPointCount() {
+        return size;
+    }
+
+    /**
+     * Evaluate the program over a range of points
+     *
+     * @param from        first point
+     * @param to          last point (excluded)
+     * @param accumulator accumulator of the results of all the expressions
+     */
+    @Override
+    public void evaluate(long from, long to, Accumulator accumulator) {
+        if (blockKernel != null) {
+            evaluateBlocks((int) from, (int) to, accumulator);
+            return;
+        }
+        double[] registers = program.newRegisters();
+        int outputs = program.getOutputCount();
+        for (int i = (int) from; i < to; i++) {
+            for (int j = 0; j < lowers.length; j++) {
+                registers[j] = lowers[j] + i * steps[j];
+            }
+            if (kernel == null) {
+                program.run(registers);
+            } else {
+                kernel.run(registers);
+            }
+            for (int k = 0; k < outputs; k++) {
+                accumulator.add(program.getOutput(registers, k), 1);
+            }
+        }
+    }
+
+    /**
+     * Evaluate the program over a range of points, a block of points at a time
+     * The results are added in the same order of the point by point evaluation
+     *
+     * @param from        first point
+     * @param to          last point (excluded)
+     * @param accumulator accumulator of the results of all the expressions
+     */
+    private void evaluateBlocks(int from, int to, Accumulator accumulator) {
+        double[][] buffers = program.newBuffers(Math.min(BlockKernel.BLOCK_SIZE, to - from));
+        int outputs = program.getOutputCount();
+        for (int start = from; start < to; start += BlockKernel.BLOCK_SIZE) {
+            int length = Math.min(BlockKernel.BLOCK_SIZE, to - start);
+            for (int j = 0; j < lowers.length; j++) {
+                double[] buffer = buffers[j];
+                for (int i = 0; i < length; i++) {
+                    buffer[i] = lowers[j] + (start + i) * steps[j];
+                }
+            }
+            blockKernel.run(buffers, length);
+            for (int i = 0; i < length; i++) {
+                for (int k = 0; k < outputs; k++) {
+                    accumulator.add(buffers[program.getOutputRegister(k)][i], 1);
+                }
+            }
+        }
+    }
+}
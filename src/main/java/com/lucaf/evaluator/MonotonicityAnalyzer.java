@@ -0,0 +1,361 @@
+package com.lucaf.evaluator;
+
+/**
+ * Class to find the minimum or the maximum of the expressions from the ends of the ranges, when the expressions are
+ * monotone in every variable
+ * <p>
+ * The program is run once over {@link Interval} operands holding the whole range of each variable, tracking for
+ * every register and variable whether the register is non-decreasing, non-increasing or constant in the variable.
+ * The rules follow the sign of the derivative of each operator, with the signs of the operands taken from their
+ * intervals. A register is safe when it can never be NaN or infinite: divisors must not contain zero, bases of
+ * non-integer powers must be positive and no interval can reach the largest double. The rounding of the operators
+ * is monotone, so a safe monotone expression takes its extremes exactly on the corners of a grid or on the ends of
+ * a list.
+ */
+public class MonotonicityAnalyzer {
+
+    /**
+     * Direction of a register that can both increase and decrease with a variable
+     */
+    private static final int UNKNOWN = 2;
+
+    /**
+     * Program to analyze
+     */
+    private final Program program;
+
+    /**
+     * Lower bound of each variable
+     */
+    private final double[] lowers;
+
+    /**
+     * Step of each variable
+     */
+    private final double[] steps;
+
+    /**
+     * Number of values of each variable
+     */
+    private final int[] sizes;
+
+    /**
+     * Direction of each register in each variable: 1 non-decreasing, -1 non-increasing, 0 constant, null if the
+     * register is not safe
+     */
+    private final int[][] directions;
+
+    /**
+     * Constructor of the analyzer, the program is analyzed immediately
+     *
+     * @param program program to analyze
+     * @param lowers  lower bound of each variable
+     * @param steps   step of each variable
+     * @param sizes   number of values of each variable
+     */
+    public MonotonicityAnalyzer(Program program, double[] lowers, double[] steps, int[] sizes) {
+        this.program = program;
+        this.lowers = lowers;
+        this.steps = steps;
+        this.sizes = sizes;
+        int variables = program.getVariableCount();
+        int base = variables + program.getConstantCount();
+        Interval[] intervals = new Interval[program.getRegisterCount()];
+        directions = new int[program.getRegisterCount()][];
+        for (int i = 0; i < variables; i++) {
+            intervals[i] = Interval.of(value(i, 0), value(i, sizes[i] - 1));
+            directions[i] = new int[variables];
+            directions[i][i] = 1;
+        }
+        for (int i = 0; i < program.getConstantCount(); i++) {
+            intervals[variables + i] = Interval.of(program.getConstant(i));
+            directions[variables + i] = isSafe(intervals[variables + i]) ? new int[variables] : null;
+        }
+        for (int i = 0; i < program.getInstructionCount(); i++) {
+            int left = program.getLeft(i);
+            int right = program.getRight(i);
+            intervals[base + i] = Interval.apply(program.getOpcode(i), intervals[left], intervals[right]);
+            if (directions[left] != null && directions[right] != null && isSafe(intervals[base + i])) {
+                directions[base + i] = direction(program.getOpcode(i), intervals[left], intervals[right],
+                        directions[left], directions[right]);
+            }
+        }
+    }
+
+    /**
+     * Get a value of a variable, computed like during the evaluation
+     *
+     * @param variable slot of the variable
+     * @param index    index of the value
+     * @return value of the variable
+     */
+    private double value(int variable, int index) {
+        return lowers[variable] + index * steps[variable];
+    }
+
+    /**
+     * Find the minimum or the maximum of the expressions over the grid from its corners
+     *
+     * @param maximum true to search the maximum, false to search the minimum
+     * @return accumulator of the results of the candidate corners, or null if the expressions are not monotone
+     */
+    public Accumulator extremeOfGrid(boolean maximum) {
+        Accumulator accumulator = new Accumulator();
+        for (int k = 0; k < program.getOutputCount(); k++) {
+            int[] direction = directions[program.getOutputRegister(k)];
+            if (direction == null) {
+                return null;
+            }
+            double[] registers = program.newRegisters();
+            for (int v = 0; v < direction.length; v++) {
+                if (direction[v] == UNKNOWN) {
+                    return null;
+                }
+                boolean upper = maximum ? direction[v] > 0 : direction[v] < 0;
+                registers[v] = value(v, upper ? sizes[v] - 1 : 0);
+            }
+            program.run(registers);
+            double result = program.getOutput(registers, k);
+            if (!Double.isFinite(result)) {
+                return null;
+            }
+            accumulator.add(result, 1);
+        }
+        return checked(accumulator, maximum);
+    }
+
+    /**
+     * Find the minimum or the maximum of the expressions over a list from its first and last point
+     *
+     * @param maximum true to search the maximum, false to search the minimum
+     * @param size    number of points of the list
+     * @return accumulator of the results of the candidate points, or null if the expressions are not monotone
+     */
+    public Accumulator extremeOfList(boolean maximum, int size) {
+        Accumulator accumulator = new Accumulator();
+        for (int k = 0; k < program.getOutputCount(); k++) {
+            int[] direction = directions[program.getOutputRegister(k)];
+            if (direction == null) {
+                return null;
+            }
+            int overall = 0;
+            for (int d : direction) {
+                overall = combine(overall, d);
+            }
+            if (overall == UNKNOWN) {
+                return null;
+            }
+            boolean last = maximum ? overall > 0 : overall < 0;
+            double[] registers = program.newRegisters();
+            for (int v = 0; v < direction.length; v++) {
+                registers[v] = value(v, last ? size - 1 : 0);
+            }
+            program.run(registers);
+            double result = program.getOutput(registers, k);
+            if (!Double.isFinite(result)) {
+                return null;
+            }
+            accumulator.add(result, 1);
+        }
+        return checked(accumulator, maximum);
+    }
+
+    /**
+     * Check the extreme found on the candidates
+     * A zero extreme is rejected, since other points could give the same zero with the opposite sign
+     *
+     * @param accumulator accumulator of the results of the candidates
+     * @param maximum     true if the maximum has been searched
+     * @return the accumulator, or null if the extreme must be found by enumeration
+     */
+    private static Accumulator checked(Accumulator accumulator, boolean maximum) {
+        if (accumulator.getCount() == 0 || (maximum ? accumulator.getMax() : accumulator.getMin()) == 0) {
+            return null;
+        }
+        return accumulator;
+    }
+
+    /**
+     * Check if an interval holds only finite values
+     *
+     * @param interval interval to check
+     * @return true if the register can never be NaN or infinite
+     */
+    private static boolean isSafe(Interval interval) {
+        return !interval.isEmpty() && interval.lower > -Double.MAX_VALUE && interval.upper < Double.MAX_VALUE;
+    }
+
+    /**
+     * Get the direction of the result of an operator in each variable
+     *
+     * @param opcode operator
+     * @param a      interval of the left operand
+     * @param b      interval of the right operand
+     * @param da     direction of the left operand
+     * @param db     direction of the right operand
+     * @return direction of the result, null if the result is not safe
+     */
+    private static int[] direction(byte opcode, Interval a, Interval b, int[] da, int[] db) {
+        int[] result = new int[da.length];
+        switch (opcode) {
+            case Program.ADD:
+                for (int v = 0; v < result.length; v++) {
+                    result[v] = combine(da[v], db[v]);
+                }
+                return result;
+            case Program.SUB:
+                for (int v = 0; v < result.length; v++) {
+                    result[v] = combine(da[v], negate(db[v]));
+                }
+                return result;
+            case Program.MUL:
+                for (int v = 0; v < result.length; v++) {
+                    result[v] = combine(multiply(da[v], sign(b)), multiply(db[v], sign(a)));
+                }
+                return result;
+            case Program.DIV:
+                if (b.contains(0)) {
+                    return null;
+                }
+                for (int v = 0; v < result.length; v++) {
+                    result[v] = combine(multiply(da[v], sign(b)), multiply(db[v], negate(sign(a))));
+                }
+                return result;
+            case Program.POW:
+                return powDirection(a, b, da, db);
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Get the direction of a power in each variable
+     * A constant integer exponent allows any base not containing zero when the exponent is negative, otherwise the base
+     * must be positive, or non-negative with a constant positive exponent
+     *
+     * @param a  interval of the base
+     * @param b  interval of the exponent
+     * @param da direction of the base
+     * @param db direction of the exponent
+     * @return direction of the result, null if the result is not safe
+     */
+    private static int[] powDirection(Interval a, Interval b, int[] da, int[] db) {
+        int[] result = new int[da.length];
+        boolean constantExponent = isConstant(db);
+        if (constantExponent && b.lower == b.upper && b.lower == Math.rint(b.lower)) {
+            double k = b.lower;
+            if (k == 0) {
+                return result;
+            }
+            if (k < 0 && a.contains(0)) {
+                return null;
+            }
+            boolean even = k % 2 == 0;
+            int factor;
+            if (!even) {
+                factor = k > 0 ? 1 : -1;
+            } else {
+                factor = k > 0 ? sign(a) : negate(sign(a));
+            }
+            for (int v = 0; v < result.length; v++) {
+                result[v] = multiply(da[v], factor);
+            }
+            return result;
+        }
+        if (!(a.lower > 0 || (a.lower >= 0 && constantExponent && b.lower > 0))) {
+            return null;
+        }
+        int logSign;
+        if (a.lower == 1 && a.upper == 1) {
+            logSign = 0;
+        } else if (a.lower >= 1) {
+            logSign = 1;
+        } else if (a.upper <= 1) {
+            logSign = -1;
+        } else {
+            logSign = UNKNOWN;
+        }
+        for (int v = 0; v < result.length; v++) {
+            result[v] = combine(multiply(db[v], logSign), multiply(da[v], sign(b)));
+        }
+        return result;
+    }
+
+    /**
+     * Check if a register does not depend on any variable
+     *
+     * @param direction direction of the register
+     * @return true if the register is constant
+     */
+    private static boolean isConstant(int[] direction) {
+        for (int d : direction) {
+            if (d != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the sign of the values of an interval
+     *
+     * @param interval interval to check
+     * @return 1 if non-negative, -1 if non-positive, 0 if zero, {@link #UNKNOWN} if both signs are possible
+     */
+    private static int sign(Interval interval) {
+        if (interval.lower == 0 && interval.upper == 0) {
+            return 0;
+        }
+        if (interval.lower >= 0) {
+            return 1;
+        }
+        if (interval.upper <= 0) {
+            return -1;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Combine the directions of two terms added together
+     *
+     * @param a direction of the first term
+     * @param b direction of the second term
+     * @return direction of the sum
+     */
+    private static int combine(int a, int b) {
+        if (a == 0) {
+            return b;
+        }
+        if (b == 0 || a == b) {
+            return a;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Multiply a direction by a sign
+     *
+     * @param direction direction to multiply
+     * @param sign      sign, 1, -1, 0 or {@link #UNKNOWN}
+     * @return direction of the product
+     */
+    private static int multiply(int direction, int sign) {
+        if (direction == 0 || sign == 0) {
+            return 0;
+        }
+        if (direction == UNKNOWN || sign == UNKNOWN) {
+            return UNKNOWN;
+        }
+        return direction * sign;
+    }
+
+    /**
+     * Negate a direction
+     *
+     * @param direction direction to negate
+     * @return opposite direction
+     */
+    private static int negate(int direction) {
+        return direction == UNKNOWN ? UNKNOWN : -direction;
+    }
+}
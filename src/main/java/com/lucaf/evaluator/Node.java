@@ -27,6 +27,11 @@ public class Node {
      */
     private String value = "";
 
+    /**
+     * Numeric value of the node, null if the value has to be read from the string
+     */
+    private Double number = null;
+
     /**
      * Parser object of the tree
      */
@@ -43,6 +48,44 @@ public class Node {
         this.parser = parser;
     }
 
+    /**
+     * Constructor of a numeric Node, the number can be negative, infinite or NaN
+     *
+     * @param number value of the node
+     * @param parser parser object of the tree
+     */
+    public Node(double number, Parser parser) {
+        this(Double.toString(number), parser);
+        this.number = number;
+    }
+
+    /**
+     * Check if the node is a number
+     *
+     * @return true if the node is a number
+     */
+    public boolean isNumber() {
+        return number != null || Tokens.isNumber(value);
+    }
+
+    /**
+     * Get the numeric value of the node
+     *
+     * @return value of the node as a double
+     */
+    public double getNumber() {
+        return number != null ? number : Double.parseDouble(value);
+    }
+
+    /**
+     * Check if the node is a variable
+     *
+     * @return true if the node is a variable
+     */
+    public boolean isVariable() {
+        return number == null && Tokens.isVariable(value);
+    }
+
     /**
      * Get the value of the node
      *
@@ -59,6 +102,7 @@ public class Node {
      */
     public void setValue(String value) {
         this.value = value;
+        this.number = null;
     }
 
     /**
@@ -79,6 +123,24 @@ public class Node {
         this.parent = parent;
     }
 
+    /**
+     * Get the left child node
+     *
+     * @return left child node
+     */
+    public Node getLeft() {
+        return left;
+    }
+
+    /**
+     * Get the right child node
+     *
+     * @return right child node
+     */
+    public Node getRight() {
+        return right;
+    }
+
     /**
      * Set the left child node
      *
@@ -103,7 +165,9 @@ public class Node {
      * @return value of the tree
      */
     public Double toDouble() {
-        if (Tokens.isNumber(value)) {
+        if (number != null) {
+            return number;
+        } else if (Tokens.isNumber(value)) {
             return Double.parseDouble(value);
         } else if (Tokens.isVariable(value)) {
             return parser.getVariables().get(value);
@@ -0,0 +1,180 @@
+package com.lucaf.evaluator;
+
+/**
+ * Class to simplify a parse tree before compiling it
+ * <p>
+ * Every rewrite gives the same result of the original tree for every value of the variables, NaN and signed zeros
+ * included, assuming that the variables are finite and never -0, as guaranteed by the ranges of a ComputeRequest.
+ * The rewrites are:
+ * <ul>
+ *     <li>operators with constant operands are replaced by their result, infinite results become NaN like in {@link Node#toDouble()}</li>
+ *     <li>x*1, 1*x, x/1 and x^1 become x</li>
+ *     <li>x^0 becomes 1</li>
+ *     <li>x-0 becomes x</li>
+ *     <li>x+z, z+x and x-z, with z known to be zero, become x when x can not be -0</li>
+ * </ul>
+ */
+public class Optimizer {
+
+    /**
+     * Optimize a tree
+     *
+     * @param node   root of the tree, its children can be modified
+     * @param parser parser object of the tree
+     * @return root of the optimized tree
+     */
+    public static Node optimize(Node node, Parser parser) {
+        if (node == null || node.getLeft() == null || node.getRight() == null) {
+            return node;
+        }
+        Node left = optimize(node.getLeft(), parser);
+        Node right = optimize(node.getRight(), parser);
+        node.setLeft(left);
+        node.setRight(right);
+        left.setParent(node);
+        right.setParent(node);
+        byte opcode = Program.opcode(node.getValue());
+        if (left.isNumber() && right.isNumber()) {
+            return new Node(Program.apply(opcode, left.getNumber(), right.getNumber()), parser);
+        }
+        switch (opcode) {
+            case Program.MUL:
+                if (isNumber(right, 1)) {
+                    return detach(left);
+                } else if (isNumber(left, 1)) {
+                    return detach(right);
+                }
+                break;
+            case Program.DIV:
+                if (isNumber(right, 1)) {
+                    return detach(left);
+                }
+                break;
+            case Program.POW:
+                if (isNumber(right, 1)) {
+                    return detach(left);
+                } else if (isNumber(right, 0)) {
+                    return new Node(1, parser);
+                }
+                break;
+            case Program.ADD:
+                if (isZero(right) && !mayBeNegativeZero(left)) {
+                    return detach(left);
+                } else if (isZero(left) && !mayBeNegativeZero(right)) {
+                    return detach(right);
+                }
+                break;
+            case Program.SUB:
+                if (isPositiveZero(right) || (isZero(right) && !mayBeNegativeZero(left))) {
+                    return detach(left);
+                }
+                break;
+        }
+        return node;
+    }
+
+    /**
+     * Count the nodes of a tree
+     *
+     * @param node root of the tree
+     * @return number of nodes
+     */
+    public static int count(Node node) {
+        if (node == null) {
+            return 0;
+        }
+        return 1 + count(node.getLeft()) + count(node.getRight());
+    }
+
+    /**
+     * Remove the parent of a node that replaces it
+     *
+     * @param node node to detach
+     * @return the node
+     */
+    private static Node detach(Node node) {
+        node.setParent(null);
+        return node;
+    }
+
+    /**
+     * Check if a node is a given number
+     *
+     * @param node  node to check
+     * @param value expected value
+     * @return true if the node is a number equal to the value
+     */
+    private static boolean isNumber(Node node, double value) {
+        return node.isNumber() && node.getNumber() == value;
+    }
+
+    /**
+     * Check if a node is the constant +0
+     *
+     * @param node node to check
+     * @return true if the node is +0
+     */
+    private static boolean isPositiveZero(Node node) {
+        return node.isNumber() && Double.doubleToRawLongBits(node.getNumber()) == 0L;
+    }
+
+    /**
+     * Check if a node is always +0 or -0
+     * A product is zero when one operand is zero and the other one is finite
+     *
+     * @param node node to check
+     * @return true if the node is known to be zero
+     */
+    private static boolean isZero(Node node) {
+        if (node.isNumber()) {
+            return node.getNumber() == 0;
+        }
+        if (node.getLeft() == null || node.getRight() == null || !node.getValue().equals("*")) {
+            return false;
+        }
+        boolean leftZero = isZero(node.getLeft());
+        boolean rightZero = isZero(node.getRight());
+        return (leftZero || rightZero)
+                && (leftZero || isFiniteLeaf(node.getLeft()))
+                && (rightZero || isFiniteLeaf(node.getRight()));
+    }
+
+    /**
+     * Check if a node is a finite number or a variable
+     *
+     * @param node node to check
+     * @return true if the node is a leaf known to be neither infinite nor NaN
+     */
+    private static boolean isFiniteLeaf(Node node) {
+        if (node.isNumber()) {
+            return Double.isFinite(node.getNumber());
+        }
+        return node.isVariable();
+    }
+
+    /**
+     * Check if a node can be -0
+     *
+     * @param node node to check
+     * @return false if the node is known not to be -0
+     */
+    private static boolean mayBeNegativeZero(Node node) {
+        if (node.isNumber()) {
+            return Double.doubleToRawLongBits(node.getNumber()) == Double.doubleToRawLongBits(-0.0);
+        }
+        if (node.isVariable()) {
+            return false;
+        }
+        if (node.getLeft() == null || node.getRight() == null) {
+            return true;
+        }
+        switch (node.getValue()) {
+            case "+":
+                return mayBeNegativeZero(node.getLeft()) && mayBeNegativeZero(node.getRight());
+            case "-":
+                return mayBeNegativeZero(node.getLeft());
+            default:
+                return true;
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.lucaf.evaluator;
+
+import java.util.List;
+
+/**
+ * Immutable result of parsing and optimizing an expression, which can be shared by all the requests using the same
+ * expression with the same variables
+ */
+public final class ParsedExpression {
+
+    /**
+     * Root of the optimized tree, it must not be modified
+     */
+    private final Node root;
+
+    /**
+     * Number of nodes of the tree before the optimization
+     */
+    private final int parsedNodeCount;
+
+    /**
+     * Number of nodes of the tree after the optimization
+     */
+    private final int optimizedNodeCount;
+
+    /**
+     * Compiled program of the expression
+     */
+    private final Program program;
+
+    /**
+     * Constructor of the parsed expression
+     *
+     * @param root               root of the optimized tree
+     * @param parsedNodeCount    number of nodes before the optimization
+     * @param optimizedNodeCount number of nodes after the optimization
+     * @param program            compiled program of the expression
+     */
+    private ParsedExpression(Node root, int parsedNodeCount, int optimizedNodeCount, Program program) {
+        this.root = root;
+        this.parsedNodeCount = parsedNodeCount;
+        this.optimizedNodeCount = optimizedNodeCount;
+        this.program = program;
+    }
+
+    /**
+     * Parse, optimize and compile an expression
+     *
+     * @param expression    expression to parse
+     * @param variableNames names of the variables in slot order
+     * @return the parsed expression
+     * @throws IllegalArgumentException if the expression is invalid
+     * @throws IllegalStateException    if the expression is empty
+     */
+    public static ParsedExpression parse(String expression, List<String> variableNames) throws IllegalArgumentException, IllegalStateException {
+        Parser parser = new Parser(expression, variableNames);
+        parser.initialize();
+        return new ParsedExpression(parser.getRoot(), parser.getParsedNodeCount(), parser.getOptimizedNodeCount(), parser.getProgram());
+    }
+
+    /**
+     * Build the key of an expression in a cache of parsed expressions
+     * The whitespace is removed, and the variables are part of the key since they define the slots of the program
+     *
+     * @param expression    expression to parse
+     * @param variableNames names of the variables in slot order
+     * @return key of the expression
+     */
+    public static String key(String expression, List<String> variableNames) {
+        return String.join(",", variableNames) + ";" + expression.replaceAll("\\s", "");
+    }
+
+    /**
+     * Get the root of the optimized tree
+     *
+     * @return root node, it must not be modified
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the number of nodes of the tree before the optimization
+     *
+     * @return number of parsed nodes
+     */
+    public int getParsedNodeCount() {
+        return parsedNodeCount;
+    }
+
+    /**
+     * Get the number of nodes of the tree after the optimization
+     *
+     * @return number of optimized nodes
+     */
+    public int getOptimizedNodeCount() {
+        return optimizedNodeCount;
+    }
+
+    /**
+     * Get the compiled program of the expression
+     *
+     * @return compiled program
+     */
+    public Program getProgram() {
+        return program;
+    }
+}
@@ -7,6 +7,19 @@ import java.util.*;
  */
 public class Parser {
 
+    /**
+     * Maximum depth of the tree, the optimizer and the compilers walk the tree recursively so a deeper expression
+     * could overflow the stack of the thread
+     * A chain of left associative operators adds a level for each operand, and the optimizer overflows the default
+     * stack of 1 MB at about 3000 levels, so a sum of 2000 terms is still accepted
+     */
+    public static final int MAX_DEPTH = 2000;
+
+    /**
+     * Maximum number of nested parenthesis, the parser itself recurses at every open parenthesis
+     */
+    public static final int MAX_NESTING = 256;
+
     /**
      * Expression to parse
      */
@@ -22,13 +35,34 @@ public class Parser {
      */
     private Node root;
 
+    /**
+     * Names of the variables in slot order, null to assign the slots in order of appearance
+     */
+    private final List<String> variableNames;
+
+    /**
+     * Compiled program of the expression
+     */
+    private Program program;
+
     /**
      * Constructor of the parser
      *
      * @param expression expression to parse
      */
     public Parser(String expression) {
+        this(expression, null);
+    }
+
+    /**
+     * Constructor of the parser with the slots of the variables
+     *
+     * @param expression    expression to parse
+     * @param variableNames names of the variables, the index in the list is the slot in the compiled program
+     */
+    public Parser(String expression, List<String> variableNames) {
         this.expression = expression;
+        this.variableNames = variableNames;
     }
 
     /**
@@ -50,131 +84,218 @@ public class Parser {
     }
 
     /**
-     * Gets the start and end position for the operator future tree
+     * Number of nodes of the tree before the optimization
+     */
+    private int parsedNodeCount;
+
+    /**
+     * Number of nodes of the tree after the optimization
+     */
+    private int optimizedNodeCount;
+
+    /**
+     * Characters of the expression being parsed
+     */
+    private char[] chars;
+
+    /**
+     * Position of the next character to read
+     */
+    private int position;
+
+    /**
+     * Depth of the last subtree parsed
+     */
+    private int depth;
+
+    /**
+     * Number of parenthesis open at the position
+     */
+    private int nesting;
+
+    /**
+     * Get the precedence of an operator, all the operators are left associative
+     *
+     * @param c character to check
+     * @return precedence of the operator, or -1 if the character is not an operator
+     */
+    private static int precedence(char c) {
+        switch (c) {
+            case '+':
+            case '-':
+                return 1;
+            case '*':
+            case '/':
+                return 2;
+            case '^':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Check if a character ends a value token
      *
-     * @param tokens list of the tokens
-     * @param index  index of the operator
-     * @return array with the start and end indexes
+     * @param c character to check
+     * @return true if the character is an operator or a parenthesis
      */
-    private int[] getOperatorAroundValuesIndex(List<String> tokens, int index) {
-        int[] result = new int[2];
-        if (Tokens.isVariable(tokens.get(index + 1)) || Tokens.isNumber(tokens.get(index + 1))) {
-            result[1] = index + 1;
-        } else if (tokens.get(index + 1).equals("(")) {
-            int open = 1;
-            int i = index + 2;
-            while (open > 0 && i < tokens.size()) {
-                if (tokens.get(i).equals("(")) {
-                    open++;
-                } else if (tokens.get(i).equals(")")) {
-                    open--;
-                }
-                i++;
-            }
-            i--;
-            result[1] = i;
-        }
-        if (Tokens.isVariable(tokens.get(index - 1)) || Tokens.isNumber(tokens.get(index - 1))) {
-            result[0] = index - 1;
-        } else if (tokens.get(index - 1).equals(")")) {
-            int open = 1;
-            int i = index - 2;
-            while (open > 0 && i >= 0) {
-                if (tokens.get(i).equals("(")) {
-                    open--;
-                } else if (tokens.get(i).equals(")")) {
-                    open++;
-                }
-                i--;
+    private static boolean isDelimiter(char c) {
+        return precedence(c) > 0 || c == '(' || c == ')';
+    }
+
+    /**
+     * Check if a character is a decimal digit
+     *
+     * @param c character to check
+     * @return true if the character is between 0 and 9
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Check if a token is a number, with the same rules of {@link Tokens#numbersRegex}
+     *
+     * @param start start of the token
+     * @param end   end of the token (excluded)
+     * @return true if the token is a number
+     */
+    private boolean isNumber(int start, int end) {
+        int i = start;
+        while (i < end && isDigit(chars[i])) {
+            i++;
+        }
+        if (i == start) {
+            return false;
+        }
+        if (i == end) {
+            return true;
+        }
+        if (chars[i] != '.' || i + 1 == end) {
+            return false;
+        }
+        for (i = i + 1; i < end; i++) {
+            if (!isDigit(chars[i])) {
+                return false;
             }
+        }
+        return true;
+    }
+
+    /**
+     * Check if a token is a variable, with the same rules of {@link Tokens#variableRegex}
+     *
+     * @param start start of the token
+     * @param end   end of the token (excluded)
+     * @return true if the token is a variable
+     */
+    private boolean isVariable(int start, int end) {
+        int i = start;
+        while (i < end && ((chars[i] >= 'a' && chars[i] <= 'z') || (chars[i] >= 'A' && chars[i] <= 'Z'))) {
             i++;
-            result[0] = i;
         }
-        return result;
+        if (i == start) {
+            return false;
+        }
+        return i == end || (i + 1 == end && isDigit(chars[i]));
     }
 
     /**
-     * Fix the wrap of the expression by adding the missing parenthesis
+     * Create an operator node with its children
      *
-     * @param tokens list of the tokens
+     * @param operator operator of the node
+     * @param left     left operand
+     * @param right    right operand
+     * @return new node
      */
-    private void fixWrap(List<String> tokens) {
-        fixWrap(tokens, 0, List.of("^"));
-        fixWrap(tokens, 0, List.of("*", "/"));
-        fixWrap(tokens, 0, List.of("+", "-"));
+    private Node operatorNode(char operator, Node left, Node right) {
+        Node node = new Node(String.valueOf(operator), this);
+        node.setLeft(left);
+        node.setRight(right);
+        left.setParent(node);
+        right.setParent(node);
+        return node;
     }
 
     /**
-     * Fix the wrap of the expression by adding the missing parenthesis
+     * Parse an expression by precedence climbing
+     * The operators with a lower precedence than the minimum are left to the caller
      *
-     * @param tokens    list of the tokens
-     * @param last      number of last operator wrapped
-     * @param operators list of the operators to check and wrap
+     * @param minPrecedence minimum precedence of the operators to consume
+     * @return root of the parsed subtree
+     * @throws IllegalArgumentException if the expression is invalid
+     * @throws ExpressionTooDeepException if the tree is deeper than {@link #MAX_DEPTH}
      */
-    private void fixWrap(List<String> tokens, int last, List<String> operators) {
-        int count = 0;
-        for (int i = 0; i < tokens.size(); i++) {
-            if (operators.contains(tokens.get(i))) {
-                count++;
-                if (count <= last) {
-                    continue;
-                }
-                int[] indexes = getOperatorAroundValuesIndex(tokens, i);
-                if (indexes[0] == 0 || indexes[1] == tokens.size() - 1) {
-                    tokens.add(indexes[1] + 1, ")");
-                    tokens.add(indexes[0], "(");
-                    fixWrap(tokens, count, operators);
-                    break;
-                }
-                if (tokens.get(indexes[0] - 1).equals("(") && tokens.get(indexes[1] + 1).equals(")")) {
-                    continue;
-                } else {
-                    tokens.add(indexes[1] + 1, ")");
-                    tokens.add(indexes[0], "(");
-                    fixWrap(tokens, count, operators);
-                    break;
-                }
+    private Node parseExpression(int minPrecedence) throws IllegalArgumentException {
+        Node left = parseOperand();
+        int leftDepth = depth;
+        while (position < chars.length) {
+            char operator = chars[position];
+            int precedence = precedence(operator);
+            if (precedence < minPrecedence) {
+                break;
+            }
+            position++;
+            Node right = parseExpression(precedence + 1);
+            leftDepth = Math.max(leftDepth, depth) + 1;
+            if (leftDepth > MAX_DEPTH) {
+                throw new ExpressionTooDeepException("The expression is nested too deeply at " + position);
             }
+            left = operatorNode(operator, left, right);
         }
+        depth = leftDepth;
+        return left;
     }
 
     /**
-     * Tokenize the expression
+     * Parse a number, a variable or an expression between parenthesis
      *
-     * @param exp expression to tokenize
-     * @return array of the tokens
+     * @return root of the parsed subtree
+     * @throws IllegalArgumentException if the expression is invalid
+     * @throws ExpressionTooDeepException if the parenthesis are nested deeper than {@link #MAX_NESTING}
      */
-    private String[] tokenize(String exp) {
-        List<String> tokens = new ArrayList<>();
-        StringBuilder current = new StringBuilder();
-        for (char c : exp.toCharArray()) {
-            if (Tokens.isOperator(String.valueOf(c))) {
-                if (current.length() > 0) {
-                    tokens.add(current.toString());
-                    current = new StringBuilder();
-                }
-                tokens.add(String.valueOf(c));
-            } else if (c == '(' || c == ')') {
-                if (current.length() > 0) {
-                    tokens.add(current.toString());
-                    current = new StringBuilder();
-                }
-                tokens.add(String.valueOf(c));
-            } else {
-                current.append(c);
+    private Node parseOperand() throws IllegalArgumentException {
+        if (position >= chars.length) {
+            throw new IllegalArgumentException("Missing operand at the end of the expression");
+        }
+        if (chars[position] == '(') {
+            if (++nesting > MAX_NESTING) {
+                throw new ExpressionTooDeepException("Too many nested parenthesis at " + position);
+            }
+            position++;
+            Node node = parseExpression(1);
+            if (position >= chars.length || chars[position] != ')') {
+                throw new IllegalArgumentException("Missing closing parenthesis at " + position);
             }
+            position++;
+            nesting--;
+            return node;
         }
-        if (current.length() > 0) {
-            tokens.add(current.toString());
+        int start = position;
+        while (position < chars.length && !isDelimiter(chars[position])) {
+            position++;
         }
-        fixWrap(tokens);
-        return tokens.toArray(String[]::new);
+        if (start == position) {
+            throw new IllegalArgumentException("Missing operand at " + position);
+        }
+        String token = new String(chars, start, position - start);
+        depth = 1;
+        if (isNumber(start, position)) {
+            return new Node(Double.parseDouble(token), this);
+        }
+        if (!isVariable(start, position)) {
+            throw new IllegalArgumentException("Invalid token: " + token);
+        }
+        return new Node(token, this);
     }
 
     /**
-     * Builds the Parse Tree from the expression
+     * Builds the Parse Tree from the expression, simplifies it with the {@link Optimizer} and compiles it into a {@link Program}
+     * The expression is parsed in a single pass, with the usual precedence of the operators
      *
-     * @throws IllegalArgumentException if the expression is invalid
+     * @throws IllegalArgumentException if the expression is invalid, {@link ExpressionTooDeepException} if it is nested
+     *                                  too deeply
      * @throws IllegalStateException    if the expression is empty
      */
     public void initialize() throws IllegalArgumentException, IllegalStateException {
@@ -182,32 +303,63 @@ public class Parser {
             throw new IllegalStateException("The expression is empty");
         }
         this.expression = this.expression.replaceAll(" ", "");
-        String[] tokenized = tokenize(this.expression);
-        root = new Node("", this);
-        Node current = root;
-        for (String token : tokenized) {
-            if (token.equals("(")) {
-                Node newNode = new Node("", this);
-                newNode.setParent(current);
-                current.setLeft(newNode);
-                current = newNode;
-            } else if (token.equals(")")) {
-                current = current.getParent();
-            } else {
-                if (Tokens.isOperator(token)) {
-                    current.setValue(token);
-                    Node newNode = new Node("", this);
-                    newNode.setParent(current);
-                    current.setRight(newNode);
-                    current = newNode;
-                } else if (Tokens.isNumber(token) || Tokens.isVariable(token)) {
-                    current.setValue(token);
-                    current = current.getParent();
-                } else {
-                    throw new IllegalArgumentException("Invalid token: " + token);
-                }
-            }
+        if (this.expression.isEmpty()) {
+            throw new IllegalStateException("The expression is empty");
+        }
+        chars = this.expression.toCharArray();
+        position = 0;
+        nesting = 0;
+        root = parseExpression(1);
+        if (position < chars.length) {
+            throw new IllegalArgumentException("Unexpected character at " + position + ": " + chars[position]);
+        }
+        chars = null;
+        parsedNodeCount = Optimizer.count(root);
+        root = Optimizer.optimize(root, this);
+        optimizedNodeCount = Optimizer.count(root);
+        ProgramBuilder programBuilder = variableNames == null ? new ProgramBuilder() : new ProgramBuilder(variableNames);
+        programBuilder.addExpression(root);
+        program = programBuilder.build();
+    }
+
+    /**
+     * Get the root node of the optimized tree
+     *
+     * @return root node, null if the expression has not been initialized
+     */
+    public Node getRoot() {
+        return root;
+    }
+
+    /**
+     * Get the number of nodes of the tree before the optimization
+     *
+     * @return number of parsed nodes
+     */
+    public int getParsedNodeCount() {
+        return parsedNodeCount;
+    }
+
+    /**
+     * Get the number of nodes of the tree after the optimization
+     *
+     * @return number of optimized nodes
+     */
+    public int getOptimizedNodeCount() {
+        return optimizedNodeCount;
+    }
+
+    /**
+     * Get the compiled program of the expression
+     *
+     * @return compiled program
+     * @throws IllegalStateException if the expression has not been initialized
+     */
+    public Program getProgram() throws IllegalStateException {
+        if (program == null) {
+            throw new IllegalStateException("The expression has not been initialized");
         }
+        return program;
     }
 
     /**
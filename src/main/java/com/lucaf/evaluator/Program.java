@@ -0,0 +1,388 @@
+package com.lucaf.evaluator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Compiled and immutable form of one or more parse trees
+ * <p>
+ * The program works on a register file of doubles laid out as
+ * [variables | constants | instruction results]: the variables are resolved to integer slots at compile time,
+ * the constants are parsed once and copied in the register file by {@link #newRegisters()},
+ * and every instruction writes its result in its own register.
+ * Instructions are stored in postfix order, so the operands of an instruction are always computed before it.
+ */
+public final class Program {
+
+    /**
+     * Opcode of the sum
+     */
+    public static final byte ADD = 0;
+
+    /**
+     * Opcode of the subtraction
+     */
+    public static final byte SUB = 1;
+
+    /**
+     * Opcode of the multiplication
+     */
+    public static final byte MUL = 2;
+
+    /**
+     * Opcode of the division
+     */
+    public static final byte DIV = 3;
+
+    /**
+     * Opcode of the power
+     */
+    public static final byte POW = 4;
+
+    /**
+     * Names of the variables, the index in the array is the slot of the variable
+     */
+    private final String[] variables;
+
+    /**
+     * Values of the constants, stored after the variables in the register file
+     */
+    private final double[] constants;
+
+    /**
+     * Opcodes of the instructions
+     */
+    private final byte[] opcodes;
+
+    /**
+     * Register of the left operand of each instruction
+     */
+    private final int[] left;
+
+    /**
+     * Register of the right operand of each instruction
+     */
+    private final int[] right;
+
+    /**
+     * Registers holding the result of each compiled expression
+     */
+    private final int[] outputs;
+
+    /**
+     * Constructor of the program, use {@link ProgramBuilder} to create one
+     *
+     * @param variables names of the variables
+     * @param constants values of the constants
+     * @param opcodes   opcodes of the instructions
+     * @param left      register of the left operand of each instruction
+     * @param right     register of the right operand of each instruction
+     * @param outputs   registers holding the result of each expression
+     */
+    Program(String[] variables, double[] constants, byte[] opcodes, int[] left, int[] right, int[] outputs) {
+        this.variables = variables;
+        this.constants = constants;
+        this.opcodes = opcodes;
+        this.left = left;
+        this.right = right;
+        this.outputs = outputs;
+    }
+
+    /**
+     * Apply an operator with the same rules of {@link Node#toDouble()}
+     * An infinite result is converted to NaN
+     *
+     * @param opcode opcode of the operator
+     * @param a      left operand
+     * @param b      right operand
+     * @return result of the operator
+     */
+    public static double apply(byte opcode, double a, double b) {
+        double result;
+        switch (opcode) {
+            case ADD:
+                result = a + b;
+                break;
+            case SUB:
+                result = a - b;
+                break;
+            case MUL:
+                result = a * b;
+                break;
+            case DIV:
+                result = a / b;
+                break;
+            case POW:
+                result = Math.pow(a, b);
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+        return finite(result);
+    }
+
+    /**
+     * Convert an infinite value to NaN
+     *
+     * @param value value to check
+     * @return the value, or NaN if it is infinite
+     */
+    public static double finite(double value) {
+        return Double.isInfinite(value) ? Double.NaN : value;
+    }
+
+    /**
+     * Get the opcode of an operator token
+     *
+     * @param token operator token
+     * @return opcode of the operator
+     * @throws IllegalArgumentException if the token is not an operator
+     */
+    public static byte opcode(String token) throws IllegalArgumentException {
+        switch (token) {
+            case "+":
+                return ADD;
+            case "-":
+                return SUB;
+            case "*":
+                return MUL;
+            case "/":
+                return DIV;
+            case "^":
+                return POW;
+            default:
+                throw new IllegalArgumentException("Invalid operator: " + token);
+        }
+    }
+
+    /**
+     * Create a new register file with the constants already loaded
+     * The variables must be written in the first {@link #getVariableCount()} registers before running the program
+     *
+     * @return new register file
+     */
+    public double[] newRegisters() {
+        double[] registers = new double[variables.length + constants.length + opcodes.length];
+        System.arraycopy(constants, 0, registers, variables.length, constants.length);
+        return registers;
+    }
+
+    /**
+     * Create new register buffers, holding one value of each register for a block of points, with the constants
+     * already loaded
+     *
+     * @param length number of points of the block
+     * @return new register buffers, indexed by register and then by point
+     */
+    public double[][] newBuffers(int length) {
+        double[][] buffers = new double[variables.length + constants.length + opcodes.length][length];
+        for (int i = 0; i < constants.length; i++) {
+            Arrays.fill(buffers[variables.length + i], constants[i]);
+        }
+        return buffers;
+    }
+
+    /**
+     * Run all the instructions of the program
+     *
+     * @param registers register file created by {@link #newRegisters()} with the variables set
+     */
+    public void run(double[] registers) {
+        run(registers, 0, opcodes.length);
+    }
+
+    /**
+     * Run a range of instructions of the program
+     * The registers read by the range must have been computed by a previous run
+     *
+     * @param registers register file created by {@link #newRegisters()} with the variables set
+     * @param from      first instruction to run
+     * @param to        last instruction to run (excluded)
+     */
+    public void run(double[] registers, int from, int to) {
+        int base = variables.length + constants.length;
+        for (int i = from; i < to; i++) {
+            registers[base + i] = apply(opcodes[i], registers[left[i]], registers[right[i]]);
+        }
+    }
+
+    /**
+     * Get a copy of the program with the instructions in a different order
+     * Every instruction must come after the instructions computing its operands
+     *
+     * @param order order[k] is the index of the instruction to move at position k
+     * @return reordered program
+     */
+    public Program reorder(int[] order) {
+        int base = variables.length + constants.length;
+        int[] position = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            position[order[k]] = k;
+        }
+        byte[] newOpcodes = new byte[order.length];
+        int[] newLeft = new int[order.length];
+        int[] newRight = new int[order.length];
+        for (int k = 0; k < order.length; k++) {
+            newOpcodes[k] = opcodes[order[k]];
+            newLeft[k] = left[order[k]] < base ? left[order[k]] : base + position[left[order[k]] - base];
+            newRight[k] = right[order[k]] < base ? right[order[k]] : base + position[right[order[k]] - base];
+        }
+        int[] newOutputs = new int[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            newOutputs[i] = outputs[i] < base ? outputs[i] : base + position[outputs[i] - base];
+        }
+        return new Program(variables, constants, newOpcodes, newLeft, newRight, newOutputs);
+    }
+
+    /**
+     * Run the program and get the result of the first expression
+     *
+     * @param registers register file created by {@link #newRegisters()} with the variables set
+     * @return result of the first expression
+     */
+    public double evaluate(double[] registers) {
+        run(registers);
+        return registers[outputs[0]];
+    }
+
+    /**
+     * Get an interpreter of the program
+     * The returned object owns its register file, so it must not be shared between threads
+     *
+     * @return interpreted expression
+     */
+    public CompiledExpression interpreter() {
+        double[] registers = newRegisters();
+        return new CompiledExpression() {
+            @Override
+            public double eval(double[] vars) {
+                System.arraycopy(vars, 0, registers, 0, variables.length);
+                return evaluate(registers);
+            }
+
+            @Override
+            public void eval(double[] vars, double[] results) {
+                System.arraycopy(vars, 0, registers, 0, variables.length);
+                run(registers);
+                for (int i = 0; i < outputs.length; i++) {
+                    results[i] = registers[outputs[i]];
+                }
+            }
+        };
+    }
+
+    /**
+     * Get the result of an expression after {@link #run(double[])}
+     *
+     * @param registers register file of the last run
+     * @param output    index of the expression
+     * @return result of the expression
+     */
+    public double getOutput(double[] registers, int output) {
+        return registers[outputs[output]];
+    }
+
+    /**
+     * Get the names of the variables in slot order
+     *
+     * @return names of the variables
+     */
+    public List<String> getVariables() {
+        return List.of(variables);
+    }
+
+    /**
+     * Get the number of variable slots
+     *
+     * @return number of variables
+     */
+    public int getVariableCount() {
+        return variables.length;
+    }
+
+    /**
+     * Get the number of constants
+     *
+     * @return number of constants
+     */
+    public int getConstantCount() {
+        return constants.length;
+    }
+
+    /**
+     * Get the value of a constant
+     *
+     * @param index index of the constant
+     * @return value of the constant
+     */
+    public double getConstant(int index) {
+        return constants[index];
+    }
+
+    /**
+     * Get the number of instructions
+     *
+     * @return number of instructions
+     */
+    public int getInstructionCount() {
+        return opcodes.length;
+    }
+
+    /**
+     * Get the opcode of an instruction
+     *
+     * @param index index of the instruction
+     * @return opcode of the instruction
+     */
+    public byte getOpcode(int index) {
+        return opcodes[index];
+    }
+
+    /**
+     * Get the register of the left operand of an instruction
+     *
+     * @param index index of the instruction
+     * @return register of the left operand
+     */
+    public int getLeft(int index) {
+        return left[index];
+    }
+
+    /**
+     * Get the register of the right operand of an instruction
+     *
+     * @param index index of the instruction
+     * @return register of the right operand
+     */
+    public int getRight(int index) {
+        return right[index];
+    }
+
+    /**
+     * Get the number of compiled expressions
+     *
+     * @return number of outputs
+     */
+    public int getOutputCount() {
+        return outputs.length;
+    }
+
+    /**
+     * Get the register holding the result of an expression
+     *
+     * @param output index of the expression
+     * @return register of the result
+     */
+    public int getOutputRegister(int output) {
+        return outputs[output];
+    }
+
+    /**
+     * Get the size of the register file
+     *
+     * @return number of registers
+     */
+    public int getRegisterCount() {
+        return variables.length + constants.length + opcodes.length;
+    }
+}
@@ -0,0 +1,211 @@
+package com.lucaf.evaluator;
+
+import java.util.*;
+
+/**
+ * Class to compile parse trees into a {@link Program}
+ * <p>
+ * The subterms are hash-consed: identical subterms, inside an expression or across the expressions added to the
+ * same builder, are compiled into a single instruction, so the program is a DAG evaluated once per point.
+ */
+public class ProgramBuilder {
+
+    /**
+     * Operand kinds, stored in the two lowest bits of an encoded operand
+     */
+    private static final int VARIABLE = 0, CONSTANT = 1, INSTRUCTION = 2;
+
+    /**
+     * Names of the variables in slot order
+     */
+    private final List<String> variables;
+
+    /**
+     * True if unknown variables can be added to the slots
+     */
+    private final boolean openVariables;
+
+    /**
+     * Values of the constants
+     */
+    private final List<Double> constants = new ArrayList<>();
+
+    /**
+     * Index of each constant by its bits, to load the same constant only once
+     */
+    private final Map<Long, Integer> constantIndexes = new HashMap<>();
+
+    /**
+     * Instructions as {opcode, left operand, right operand}, operands are encoded by {@link #encode}
+     */
+    private final List<int[]> instructions = new ArrayList<>();
+
+    /**
+     * Index of each instruction by {opcode, left operand, right operand}, to compute each distinct subterm only once
+     */
+    private final Map<List<Integer>, Integer> instructionIndexes = new HashMap<>();
+
+    /**
+     * Encoded operands holding the result of each expression
+     */
+    private final List<Integer> outputs = new ArrayList<>();
+
+    /**
+     * Constructor of the builder with a fixed set of variables
+     *
+     * @param variables names of the variables, in slot order
+     */
+    public ProgramBuilder(List<String> variables) {
+        this.variables = new ArrayList<>(variables);
+        this.openVariables = false;
+    }
+
+    /**
+     * Constructor of the builder, the variables get a slot in order of appearance
+     */
+    public ProgramBuilder() {
+        this.variables = new ArrayList<>();
+        this.openVariables = true;
+    }
+
+    /**
+     * Encode an operand before the register layout is known
+     *
+     * @param kind  kind of the operand
+     * @param index index of the operand in its kind
+     * @return encoded operand
+     */
+    private static int encode(int kind, int index) {
+        return (index << 2) | kind;
+    }
+
+    /**
+     * Add an expression to the program
+     *
+     * @param root root node of the parse tree
+     * @return index of the expression in the outputs of the program
+     * @throws IllegalArgumentException if the tree contains an invalid token or an unknown variable
+     */
+    public int addExpression(Node root) throws IllegalArgumentException {
+        outputs.add(compile(root));
+        return outputs.size() - 1;
+    }
+
+    /**
+     * Compile a subtree in postfix order
+     *
+     * @param node root of the subtree, null is compiled as 0 like in {@link Node#toDouble()}
+     * @return encoded operand with the result of the subtree
+     */
+    private int compile(Node node) {
+        if (node == null) {
+            return constant(0);
+        }
+        String value = node.getValue();
+        if (node.isNumber()) {
+            return constant(node.getNumber());
+        }
+        if (node.isVariable()) {
+            return variable(value);
+        }
+        if (value.isEmpty()) {
+            if (node.getLeft() != null && node.getRight() == null) {
+                return compile(node.getLeft());
+            }
+            throw new IllegalArgumentException("Invalid empty node");
+        }
+        byte opcode = Program.opcode(value);
+        int left = compile(node.getLeft());
+        int right = compile(node.getRight());
+        return instruction(opcode, left, right);
+    }
+
+    /**
+     * Get the operand of an instruction, adding it only if the same instruction does not exist yet
+     * The operands of the commutative operators are sorted, so a+b and b+a share the same instruction
+     *
+     * @param opcode opcode of the instruction
+     * @param left   encoded left operand
+     * @param right  encoded right operand
+     * @return encoded operand
+     */
+    private int instruction(byte opcode, int left, int right) {
+        if ((opcode == Program.ADD || opcode == Program.MUL) && left > right) {
+            int swap = left;
+            left = right;
+            right = swap;
+        }
+        List<Integer> key = List.of((int) opcode, left, right);
+        Integer index = instructionIndexes.get(key);
+        if (index == null) {
+            index = instructions.size();
+            instructions.add(new int[]{opcode, left, right});
+            instructionIndexes.put(key, index);
+        }
+        return encode(INSTRUCTION, index);
+    }
+
+    /**
+     * Get the operand of a constant
+     *
+     * @param value value of the constant
+     * @return encoded operand
+     */
+    private int constant(double value) {
+        Integer index = constantIndexes.get(Double.doubleToRawLongBits(value));
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(Double.doubleToRawLongBits(value), index);
+        }
+        return encode(CONSTANT, index);
+    }
+
+    /**
+     * Get the operand of a variable
+     *
+     * @param name name of the variable
+     * @return encoded operand
+     * @throws IllegalArgumentException if the variable is unknown and the variables are fixed
+     */
+    private int variable(String name) throws IllegalArgumentException {
+        int index = variables.indexOf(name);
+        if (index < 0) {
+            if (!openVariables) {
+                throw new IllegalArgumentException("Unknown variable: " + name);
+            }
+            variables.add(name);
+            index = variables.size() - 1;
+        }
+        return encode(VARIABLE, index);
+    }
+
+    /**
+     * Build the program
+     *
+     * @return compiled program
+     */
+    public Program build() {
+        int constantBase = variables.size();
+        int instructionBase = constantBase + constants.size();
+        int[] bases = {0, constantBase, instructionBase};
+        double[] constantValues = new double[constants.size()];
+        for (int i = 0; i < constantValues.length; i++) {
+            constantValues[i] = constants.get(i);
+        }
+        byte[] opcodes = new byte[instructions.size()];
+        int[] left = new int[instructions.size()];
+        int[] right = new int[instructions.size()];
+        for (int i = 0; i < opcodes.length; i++) {
+            int[] instruction = instructions.get(i);
+            opcodes[i] = (byte) instruction[0];
+            left[i] = bases[instruction[1] & 3] + (instruction[1] >> 2);
+            right[i] = bases[instruction[2] & 3] + (instruction[2] >> 2);
+        }
+        int[] outputRegisters = new int[outputs.size()];
+        for (int i = 0; i < outputRegisters.length; i++) {
+            outputRegisters[i] = bases[outputs.get(i) & 3] + (outputs.get(i) >> 2);
+        }
+        return new Program(variables.toArray(String[]::new), constantValues, opcodes, left, right, outputRegisters);
+    }
+}
@@ -0,0 +1,341 @@
+package com.lucaf.evaluator;
+
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Class to aggregate separable expressions over a grid without enumerating the whole grid
+ * <p>
+ * An expression a+b, a-b or a*b whose operands depend on disjoint sets of variables takes over the grid every
+ * combination of the values of its operands, so its aggregates follow from the aggregates of the operands:
+ * <ul>
+ *     <li>the minimum and the maximum are the operator applied to the extremes of the operands, since the rounding of
+ *     the processor is monotone the result is the same of the full enumeration, signed zeros included; a product
+ *     is monotone only if both its operands are always positive</li>
+ *     <li>the average of a sum is the sum of the averages and the average of a product is the product of the averages,
+ *     up to the rounding of the last digits</li>
+ * </ul>
+ * The operands are decomposed recursively, the other subterms are enumerated over the dimensions of their variables
+ * only. When a combination could overflow, making some points NaN, the subterm is enumerated instead, unless it is the
+ * whole expression or it depends on every dimension of the grid: then enumerating it saves nothing, the analysis
+ * fails and the caller evaluates the grid with its usual path.
+ */
+public class SeparableAnalyzer {
+
+    /**
+     * Names of the variables, in grid order
+     */
+    private final List<String> variables;
+
+    /**
+     * Lower bound of each dimension
+     */
+    private final double[] lowers;
+
+    /**
+     * Step of each dimension
+     */
+    private final double[] steps;
+
+    /**
+     * Size of each dimension
+     */
+    private final int[] sizes;
+
+    /**
+     * Function evaluating all the points of an evaluator
+     */
+    private final Function<Evaluator, Accumulator> enumerator;
+
+    /**
+     * Variables of each node of the analyzed trees
+     */
+    private final Map<Node, BitSet> nodeVariables = new IdentityHashMap<>();
+
+    /**
+     * Number of points of the grid
+     */
+    private long gridPoints = 0;
+
+    /**
+     * Number of points enumerated
+     */
+    private long enumeratedPoints = 0;
+
+    /**
+     * Aggregates of a subterm over the dimensions of its variables
+     */
+    private static class Summary {
+
+        /**
+         * Minimum of the valid results
+         */
+        final double min;
+
+        /**
+         * Maximum of the valid results
+         */
+        final double max;
+
+        /**
+         * Average of the valid results
+         */
+        final double avg;
+
+        /**
+         * Number of points with a valid result
+         */
+        final long valid;
+
+        /**
+         * Number of points of the dimensions of the variables of the subterm
+         */
+        final long space;
+
+        /**
+         * Constructor of the summary
+         *
+         * @param min   minimum of the valid results
+         * @param max   maximum of the valid results
+         * @param avg   average of the valid results
+         * @param valid number of points with a valid result
+         * @param space number of points of the dimensions of the variables
+         */
+        Summary(double min, double max, double avg, long valid, long space) {
+            this.min = min;
+            this.max = max;
+            this.avg = avg;
+            this.valid = valid;
+            this.space = space;
+        }
+
+        /**
+         * Get the largest absolute value of the valid results
+         *
+         * @return bound of the absolute values
+         */
+        double magnitude() {
+            return Math.max(Math.abs(min), Math.abs(max));
+        }
+    }
+
+    /**
+     * Constructor of the analyzer
+     *
+     * @param variables  names of the variables, in grid order
+     * @param lowers     lower bound of each dimension
+     * @param steps      step of each dimension
+     * @param sizes      size of each dimension
+     * @param enumerator function evaluating all the points of an evaluator
+     */
+    public SeparableAnalyzer(List<String> variables, double[] lowers, double[] steps, int[] sizes, Function<Evaluator, Accumulator> enumerator) {
+        this.variables = variables;
+        this.lowers = lowers;
+        this.steps = steps;
+        this.sizes = sizes;
+        this.enumerator = enumerator;
+    }
+
+    /**
+     * Aggregate the expressions over the grid
+     *
+     * @param roots roots of the optimized trees of the expressions
+     * @return aggregate of the results, or null if an expression is not separable or the aggregates of its operands
+     * can not be combined
+     */
+    public Accumulator analyze(List<Node> roots) {
+        gridPoints = 1;
+        try {
+            for (int size : sizes) {
+                gridPoints = Math.multiplyExact(gridPoints, size);
+            }
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        for (Node root : roots) {
+            if (!isSeparable(unwrap(root))) {
+                return null;
+            }
+        }
+        Accumulator accumulator = new Accumulator();
+        for (Node root : roots) {
+            Node node = unwrap(root);
+            Summary summary = combine(Program.opcode(node.getValue()), summarize(node.getLeft()), summarize(node.getRight()));
+            if (summary == null) {
+                return null;
+            }
+            if (summary.valid > 0) {
+                long count = summary.valid * (gridPoints / summary.space);
+                accumulator.merge(Accumulator.of(summary.min, summary.max, summary.avg, count));
+            }
+        }
+        return accumulator;
+    }
+
+    /**
+     * Get the number of points enumerated by the analysis
+     *
+     * @return number of points
+     */
+    public long getEnumeratedPoints() {
+        return enumeratedPoints;
+    }
+
+    /**
+     * Skip the empty nodes wrapping a single child
+     *
+     * @param node node to unwrap
+     * @return first node that is not a wrapper
+     */
+    private static Node unwrap(Node node) {
+        while (!node.isNumber() && node.getValue().isEmpty() && node.getLeft() != null && node.getRight() == null) {
+            node = node.getLeft();
+        }
+        return node;
+    }
+
+    /**
+     * Check if a node is a separable operator
+     *
+     * @param node node to check
+     * @return true if the node is a sum, a difference or a product of operands with disjoint variables
+     */
+    private boolean isSeparable(Node node) {
+        if (node.isNumber() || node.isVariable() || node.getLeft() == null || node.getRight() == null) {
+            return false;
+        }
+        String value = node.getValue();
+        if (!value.equals("+") && !value.equals("-") && !value.equals("*")) {
+            return false;
+        }
+        return !variablesOf(node.getLeft()).intersects(variablesOf(node.getRight()));
+    }
+
+    /**
+     * Get the variables of a subtree
+     *
+     * @param node root of the subtree
+     * @return indexes of the variables
+     */
+    private BitSet variablesOf(Node node) {
+        BitSet result = nodeVariables.get(node);
+        if (result != null) {
+            return result;
+        }
+        result = new BitSet();
+        if (node.isVariable()) {
+            result.set(variables.indexOf(node.getValue()));
+        } else if (!node.isNumber()) {
+            if (node.getLeft() != null) {
+                result.or(variablesOf(node.getLeft()));
+            }
+            if (node.getRight() != null) {
+                result.or(variablesOf(node.getRight()));
+            }
+        }
+        nodeVariables.put(node, result);
+        return result;
+    }
+
+    /**
+     * Aggregate a subterm, decomposing it if it is separable
+     *
+     * @param node root of the subterm
+     * @return aggregates of the subterm, or null if it must be enumerated over the whole grid
+     */
+    private Summary summarize(Node node) {
+        node = unwrap(node);
+        if (node.isNumber()) {
+            double value = node.getNumber();
+            return Double.isFinite(value) ? new Summary(value, value, value, 1, 1) : new Summary(0, 0, 0, 0, 1);
+        }
+        if (isSeparable(node)) {
+            Summary combined = combine(Program.opcode(node.getValue()), summarize(node.getLeft()), summarize(node.getRight()));
+            if (combined != null) {
+                return combined;
+            }
+        }
+        return enumerate(node);
+    }
+
+    /**
+     * Combine the aggregates of the operands of a separable operator
+     *
+     * @param opcode operator
+     * @param left   aggregates of the left operand, null if they are not known
+     * @param right  aggregates of the right operand, null if they are not known
+     * @return aggregates of the result, or null if they can not be derived from the operands
+     */
+    private static Summary combine(byte opcode, Summary left, Summary right) {
+        if (left == null || right == null) {
+            return null;
+        }
+        long valid;
+        long space;
+        try {
+            valid = Math.multiplyExact(left.valid, right.valid);
+            space = Math.multiplyExact(left.space, right.space);
+        } catch (ArithmeticException e) {
+            return null;
+        }
+        if (valid == 0) {
+            return new Summary(0, 0, 0, 0, space);
+        }
+        double min;
+        double max;
+        double avg;
+        double bound;
+        switch (opcode) {
+            case Program.ADD:
+                min = left.min + right.min;
+                max = left.max + right.max;
+                avg = left.avg + right.avg;
+                bound = left.magnitude() + right.magnitude();
+                break;
+            case Program.SUB:
+                min = left.min - right.max;
+                max = left.max - right.min;
+                avg = left.avg - right.avg;
+                bound = left.magnitude() + right.magnitude();
+                break;
+            case Program.MUL:
+                if (!(left.min > 0 && right.min > 0)) {
+                    return null;
+                }
+                min = left.min * right.min;
+                max = left.max * right.max;
+                avg = left.avg * right.avg;
+                bound = max;
+                break;
+            default:
+                return null;
+        }
+        if (!Double.isFinite(bound)) {
+            return null;
+        }
+        return new Summary(min, max, avg, valid, space);
+    }
+
+    /**
+     * Aggregate a subterm by enumerating the dimensions of its variables
+     *
+     * @param node root of the subterm
+     * @return aggregates of the subterm, or null if its variables span the whole grid
+     */
+    private Summary enumerate(Node node) {
+        ProgramBuilder programBuilder = new ProgramBuilder(variables);
+        programBuilder.addExpression(node);
+        GridEvaluator gridEvaluator = new GridEvaluator(programBuilder.build(), lowers, steps, sizes);
+        long space = gridEvaluator.getPointCount();
+        if (space == gridPoints && gridPoints > 1) {
+            return null;
+        }
+        Accumulator accumulator = enumerator.apply(gridEvaluator);
+        enumeratedPoints += space;
+        return new Summary(accumulator.getMin(), accumulator.getMax(), accumulator.getAvg(),
+                accumulator.getCount() / gridEvaluator.getWeight(), space);
+    }
+}
@@ -2,6 +2,7 @@ package com.lucaf.evaluator;
 
 import java.util.Map;
 import java.util.function.Function;
+import java.util.regex.Pattern;
 
 /**
  * Utils class to manage the tokens and operators
@@ -11,17 +12,32 @@ public class Tokens {
     /**
      * Regex for the operators
      */
-    public static String operatorsRegex = "[\\+\\-\\*\\/\\^]";
+    public static final String operatorsRegex = "[\\+\\-\\*\\/\\^]";
 
     /**
      * Regex for the variables
      */
-    public static String variableRegex = "[a-zA-Z]+[0-9]?+";
+    public static final String variableRegex = "[a-zA-Z]+[0-9]?+";
 
     /**
      * Regex for the numbers
      */
-    public static String numbersRegex = "[0-9]+(\\.[0-9]+)?";
+    public static final String numbersRegex = "[0-9]+(\\.[0-9]+)?";
+
+    /**
+     * Compiled pattern of the operators
+     */
+    private static final Pattern operatorsPattern = Pattern.compile(operatorsRegex);
+
+    /**
+     * Compiled pattern of the variables
+     */
+    private static final Pattern variablePattern = Pattern.compile(variableRegex);
+
+    /**
+     * Compiled pattern of the numbers
+     */
+    private static final Pattern numbersPattern = Pattern.compile(numbersRegex);
 
     /**
      * Map of the operators for the computation
@@ -41,7 +57,7 @@ public class Tokens {
      * @return true if the token is an operator, false otherwise
      */
     public static boolean isOperator(String token) {
-        return token.matches(operatorsRegex);
+        return operatorsPattern.matcher(token).matches();
     }
 
     /**
@@ -51,7 +67,7 @@ public class Tokens {
      * @return true if the token is a number, false otherwise
      */
     public static boolean isNumber(String token) {
-        return token.matches(numbersRegex);
+        return numbersPattern.matcher(token).matches();
     }
 
     /**
@@ -61,7 +77,7 @@ public class Tokens {
      * @return true if the token is a variable, false otherwise
      */
     public static boolean isVariable(String token) {
-        return token.matches(variableRegex);
+        return variablePattern.matcher(token).matches();
     }
 
 }
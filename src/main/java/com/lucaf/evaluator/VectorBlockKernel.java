@@ -0,0 +1,140 @@
+package com.lucaf.evaluator;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Block kernel running the instructions over the lanes of {@link DoubleVector}, as wide as the processor allows
+ * <p>
+ * Additions, subtractions, multiplications and divisions are exact IEEE operations on every lane, so the results are
+ * the same of {@link Program#apply(byte, double, double)}, infinite results are replaced with NaN by a blend.
+ * The powers, which have no exact vector form, and the points left over the last full vector are computed one at
+ * a time.
+ * This class must be loaded only if {@link BlockKernel#VECTOR_AVAILABLE} is true.
+ */
+final class VectorBlockKernel implements BlockKernel {
+
+    /**
+     * Preferred vector shape of the processor
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Operation of each instruction
+     */
+    private final byte[] opcodes;
+
+    /**
+     * Left operand register of each instruction
+     */
+    private final int[] left;
+
+    /**
+     * Right operand register of each instruction
+     */
+    private final int[] right;
+
+    /**
+     * Result register of each instruction
+     */
+    private final int[] target;
+
+    /**
+     * Constructor of the kernel
+     *
+     * @param program program to run
+     * @param from    first instruction to run, the following ones are run up to the end of the program
+     */
+    VectorBlockKernel(Program program, int from) {
+        int count = program.getInstructionCount() - from;
+        int base = program.getVariableCount() + program.getConstantCount();
+        this.opcodes = new byte[count];
+        this.left = new int[count];
+        this.right = new int[count];
+        this.target = new int[count];
+        for (int i = 0; i < count; i++) {
+            opcodes[i] = program.getOpcode(from + i);
+            left[i] = program.getLeft(from + i);
+            right[i] = program.getRight(from + i);
+            target[i] = base + from + i;
+        }
+    }
+
+    /**
+     * Run the instructions on the first points of the buffers
+     *
+     * @param buffers register buffers of the program
+     * @param length  number of points to run, at most the length of the buffers
+     */
+    @Override
+    public void run(double[][] buffers, int length) {
+        int bound = opcodes.length == 0 ? 0 : SPECIES.loopBound(length);
+        for (int k = 0; k < opcodes.length; k++) {
+            byte opcode = opcodes[k];
+            double[] a = buffers[left[k]];
+            double[] b = buffers[right[k]];
+            double[] result = buffers[target[k]];
+            if (opcode == Program.POW) {
+                for (int i = 0; i < length; i++) {
+                    result[i] = Program.finite(Math.pow(a[i], b[i]));
+                }
+                continue;
+            }
+            for (int i = lanes(opcode, a, b, result, bound); i < length; i++) {
+                result[i] = Program.apply(opcode, a[i], b[i]);
+            }
+        }
+    }
+
+    /**
+     * Run an operation on full vectors
+     *
+     * @param opcode operation to run, any operation but the power
+     * @param a      left operand buffer
+     * @param b      right operand buffer
+     * @param result result buffer
+     * @param bound  number of points to run, multiple of the number of lanes
+     * @return number of points run
+     */
+    private static int lanes(byte opcode, double[] a, double[] b, double[] result, int bound) {
+        int step = SPECIES.length();
+        switch (opcode) {
+            case Program.ADD:
+                for (int i = 0; i < bound; i += step) {
+                    store(DoubleVector.fromArray(SPECIES, a, i).add(DoubleVector.fromArray(SPECIES, b, i)), result, i);
+                }
+                break;
+            case Program.SUB:
+                for (int i = 0; i < bound; i += step) {
+                    store(DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i)), result, i);
+                }
+                break;
+            case Program.MUL:
+                for (int i = 0; i < bound; i += step) {
+                    store(DoubleVector.fromArray(SPECIES, a, i).mul(DoubleVector.fromArray(SPECIES, b, i)), result, i);
+                }
+                break;
+            case Program.DIV:
+                for (int i = 0; i < bound; i += step) {
+                    store(DoubleVector.fromArray(SPECIES, a, i).div(DoubleVector.fromArray(SPECIES, b, i)), result, i);
+                }
+                break;
+            default:
+                return 0;
+        }
+        return bound;
+    }
+
+    /**
+     * Store a vector of results, replacing the infinite lanes with NaN
+     *
+     * @param vector results to store
+     * @param result result buffer
+     * @param offset first point of the vector
+     */
+    private static void store(DoubleVector vector, double[] result, int offset) {
+        vector.blend(Double.NaN, vector.abs().compare(VectorOperators.EQ, Double.POSITIVE_INFINITY))
+                .intoArray(result, offset);
+    }
+}
@@ -0,0 +1,62 @@
+package com.lucaf;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Tests of the counters of {@link Stats} updated by many threads at the same time
+ */
+public class StatsTest {
+
+    /**
+     * Number of threads adding requests
+     */
+    private static final int THREADS = 16;
+
+    /**
+     * Number of requests added by each thread
+     */
+    private static final int REQUESTS = 100_000;
+
+    /**
+     * Add the requests from all the threads at once and check that no update is lost
+     * The time of each request is different, so the total and the maximum are known exactly
+     *
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    @Test
+    public void countersAreExactWithConcurrentRequests() throws InterruptedException {
+        long requestsBefore = Stats.getRequests();
+        long totalTimeBefore = Stats.getTotalTime();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            long first = (long) t * REQUESTS + 1;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < REQUESTS; i++) {
+                    Stats.addRequest(first + i);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long count = (long) THREADS * REQUESTS;
+        assertEquals(requestsBefore + count, Stats.getRequests());
+        assertEquals(totalTimeBefore + count * (count + 1) / 2, Stats.getTotalTime());
+        assertEquals(count / 1e9, Stats.getMaxTime());
+    }
+}